@@ -18,10 +18,7 @@ import ida.utils.collections.MultiMap;
 import ida.utils.collections.ValueToIndex;
 import ida.utils.tuples.Pair;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Reader;
-import java.io.Writer;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -42,8 +39,32 @@ public class BinaryDataset {
 
     private boolean[][] dataset;
 
+    //null means that all examples have weight 1
     private double[] weights;
 
+    //number of original examples represented by each example of a compacted dataset (see compact()),
+    //null means that every example represents itself only
+    private double[] multiplicities;
+
+    //column-major copy of the data which is used for counting, it is built lazily from the rows;
+    //datasets opened from binary files are backed only by the columns and the rows are materialized lazily
+    private ColumnStore columns;
+
+    //views share the rows, columns and weights of the dataset they were created from; the i-th example of a view
+    //is the row rowIndices[i] of the shared data and selection is the set of these rows as a bitset (a view never contains
+    //the same row twice); both are null for datasets which are not views, selection is built lazily
+    private int[] rowIndices;
+
+    private long[] selection;
+
+    //rowIndices in increasing order, used by sparse views (see isSparse())
+    private int[] sortedRowIndices;
+
+    //views with less than numRows/SPARSE_VIEW_RATIO examples are evaluated row by row, without bitsets over all the shared rows
+    private final static int SPARSE_VIEW_RATIO = 64;
+
+    private HammingIndex hammingIndex;
+
     public BinaryDataset(){}
 
     public BinaryDataset(boolean[][] dataset){
@@ -60,17 +81,59 @@ public class BinaryDataset {
         this.set(dataset, attributeNames, weights);
     }
 
+    BinaryDataset(ColumnStore columns, String[] attributeNames, double[] weights) {
+        this(columns, attributeNames, weights, null);
+    }
+
+    BinaryDataset(ColumnStore columns, String[] attributeNames, double[] weights, double[] multiplicities) {
+        this.columns = columns;
+        this.weights = weights;
+        this.multiplicities = multiplicities;
+        this.setAttributeNames(attributeNames, columns.numColumns());
+    }
+
+    private BinaryDataset(BinaryDataset parent, int[] rowIndices, double[] weights){
+        this.dataset = parent.dataset;
+        this.columns = parent.columns();
+        this.weights = weights;
+        this.multiplicities = parent.multiplicities;
+        this.attributeNames = parent.attributeNames;
+        this.attributesToIndices = parent.attributesToIndices;
+        this.rowIndices = rowIndices;
+    }
+
+    //view containing the given rows of the shared data (not the indices of the examples of this dataset)
+    private BinaryDataset view(int[] rowIndices, double[] weights){
+        return new BinaryDataset(this, rowIndices, weights);
+    }
+
+    //view of the examples of this dataset whose rows are in the given mask
+    BinaryDataset view(long[] mask){
+        return view(rowsInMask(mask), this.weights);
+    }
+
     public void set(boolean[][] dataset, String[] attributeNames, double[] weights) {
         this.dataset = dataset;
         this.weights = weights;
+        this.multiplicities = null;
+        this.columns = null;
+        this.rowIndices = null;
+        this.selection = null;
+        this.sortedRowIndices = null;
+        this.hammingIndex = null;
+        this.setAttributeNames(attributeNames, this.dataset.length > 0 ? this.dataset[0].length : 0);
+    }
+
+    private void setAttributeNames(String[] attributeNames, int numAttributes){
         this.attributeNames = attributeNames;
+        this.attributesToIndices = new HashMap<String,Integer>();
         if (this.attributeNames != null) {
             for (int i = 0; i < attributeNames.length; i++) {
                 this.attributesToIndices.put(this.attributeNames[i], i);
             }
         }
-        if (this.dataset.length > 0 && attributeNames == null) {
-            this.attributeNames = new String[this.dataset[0].length];
+        if (numAttributes > 0 && attributeNames == null) {
+            this.attributeNames = new String[numAttributes];
             for (int i = 0; i < this.attributeNames.length; i++) {
                 this.attributeNames[i] = String.valueOf(i);
                 this.attributesToIndices.put(this.attributeNames[i], i);
@@ -116,27 +179,56 @@ public class BinaryDataset {
     }
 
     public int numExamples(){
-        return this.dataset.length;
+        if (this.rowIndices != null){
+            return this.rowIndices.length;
+        }
+        return this.dataset == null ? this.columns.numRows() : this.dataset.length;
     }
 
     public double sumOfWeights(){
-        return VectorUtils.sum(this.weights);
+        if (this.weights == null){
+            return numExamples();
+        } else if (this.rowIndices == null){
+            return VectorUtils.sum(this.weights);
+        }
+        double retVal = 0;
+        for (int row : this.rowIndices){
+            retVal += this.weights[row];
+        }
+        return retVal;
     }
 
+    /**
+     * Shuffles the order of the examples. The rows themselves are not moved, so views created before
+     * from this dataset are not affected.
+     * @param random
+     */
     public void shuffle(Random random){
-        VectorUtils.shuffle(this.dataset, random);
+        int[] indices = new int[this.numExamples()];
+        for (int i = 0; i < indices.length; i++){
+            indices[i] = this.row(i);
+        }
+        VectorUtils.shuffle(indices, random);
+        this.columns();
+        if (this.rowIndices == null){
+            this.selection = this.columns.allRows();
+        }
+        this.rowIndices = indices;
+        this.hammingIndex = null;
     }
 
+    /**
+     *
+     * @param from
+     * @param to
+     * @return view of the examples from, ..., to-1
+     */
     public BinaryDataset subDataset(int from, int to){
-        boolean[][] d = new boolean[to-from][];
-        double[] ws = new double[to-from];
-        int j = 0;
+        int[] indices = new int[to-from];
         for (int i = from; i < to; i++){
-            d[j] = this.dataset[i];
-            ws[j] = this.weights[i];
-            j++;
+            indices[i-from] = this.row(i);
         }
-        return new BinaryDataset(d, this.attributeNames, ws);
+        return view(indices, this.weights);
     }
 
     public BinaryDataset project(String[] attributes){
@@ -152,10 +244,10 @@ public class BinaryDataset {
                 index++;
             }
         }
-        boolean[][] newData = new boolean[this.dataset.length][];
+        boolean[][] newData = new boolean[this.numExamples()][];
         for (int i = 0; i < newData.length; i++){
             boolean[] newRow = new boolean[indices.length];
-            boolean[] oldRow = this.dataset[i];
+            boolean[] oldRow = this.example(i);
             for (int j = 0; j < newRow.length; j++){
                 newRow[j] = oldRow[indices[j]];
             }
@@ -165,73 +257,110 @@ public class BinaryDataset {
         for (int i = 0; i < indices.length; i++){
             newAttributesNames[i] = this.attributeNames[indices[i]];
         }
-        return new BinaryDataset(newData, newAttributesNames, this.weights);
+        BinaryDataset retVal = new BinaryDataset(newData, newAttributesNames, this.inViewOrder(this.weights));
+        retVal.multiplicities = this.inViewOrder(this.multiplicities);
+        return retVal;
     }
 
     public double enclosingHyperCubeVolume(){
-        if (this.dataset.length == 0){
+        if (this.numExamples() == 0){
             return 0;
         }
         double volume = 1;
-        int[] min = new int[this.attributeNames.length];
-        Arrays.fill(min, 1);
-        int[] max = new int[this.attributeNames.length];
-        Arrays.fill(max, 0);
-        for (boolean[] row : this.dataset){
-            for (int i = 0; i < row.length; i++){
-                if (row[i]){
-                    max[i] = 1;
-                } else {
-                    min[i] = 0;
-                }
+        ColumnStore columns = this.columns();
+        boolean sparse = this.isSparse();
+        for (int i = 0; i < this.attributeNames.length; i++){
+            int trueCount;
+            if (sparse){
+                trueCount = (int)sparseSum(new int[]{i}, new boolean[]{true}, null);
+            } else {
+                long[] mask = this.rowMask();
+                columns.and(mask, i, true);
+                trueCount = ColumnStore.cardinality(mask);
+            }
+            if (trueCount > 0 && trueCount < this.numExamples()){
+                volume *= 2;
             }
-        }
-        for (int i = 0; i < min.length; i++){
-            volume *= (1+max[i]-min[i]);
         }
         return volume;
     }
 
-    //[yes,no]
+    //[yes,no], both are views of this dataset
     public Pair<BinaryDataset,BinaryDataset> splitOnAttribute(String attribute){
         int attributeIndex = this.attributesToIndices.get(attribute);
-        int yesCount = 0;
-        for (boolean[] row : this.dataset){
-            if (row[attributeIndex]){
-                yesCount++;
-            }
-        }
-        double[] yesWeights = new double[yesCount];
-        double[] noWeights = new double[dataset.length-yesCount];
-        boolean[][] yesData = new boolean[yesCount][];
-        boolean[][] noData =  new boolean[dataset.length-yesCount][];
-        int yesIndex = 0, noIndex = 0, index = 0;
-        for (boolean[] row : this.dataset){
-            if (row[attributeIndex]){
-                yesData[yesIndex] = row;
-                yesWeights[yesIndex] = this.weights[index];
-                yesIndex++;
+        ColumnStore columns = this.columns();
+        if (this.isSparse()){
+            int[] yes = sparseSelect(new int[]{attributeIndex}, new boolean[]{true}, FormulaType.CONJUNCTION);
+            int[] no = sparseSelect(new int[]{attributeIndex}, new boolean[]{false}, FormulaType.CONJUNCTION);
+            return new Pair<BinaryDataset,BinaryDataset>(view(yes, this.weights), view(no, this.weights));
+        }
+        long[] yesMask = this.rowMask();
+        columns.and(yesMask, attributeIndex, true);
+        int yesCount = ColumnStore.cardinality(yesMask);
+        int[] yesRows = new int[yesCount];
+        int[] noRows = new int[this.numExamples()-yesCount];
+        int yesIndex = 0, noIndex = 0;
+        for (int index = 0; index < this.numExamples(); index++){
+            int row = this.row(index);
+            if ((yesMask[row >>> 6] & (1L << row)) != 0){
+                yesRows[yesIndex++] = row;
             } else {
-                noData[noIndex] = row;
-                noWeights[noIndex] = this.weights[index];
-                noIndex++;
+                noRows[noIndex++] = row;
             }
-            index++;
         }
-        return new Pair<BinaryDataset,BinaryDataset>(new BinaryDataset(yesData, this.attributeNames, yesWeights), new BinaryDataset(noData, this.attributeNames, noWeights));
+        return new Pair<BinaryDataset,BinaryDataset>(view(yesRows, this.weights), view(noRows, this.weights));
     }
 
-    private boolean check(boolean[] row, String[] attributes, boolean[] positive, FormulaType formulaType){
-        if (formulaType == FormulaType.CONJUNCTION) {
-            for (int i = 0; i < attributes.length; i++) {
-                if (row[this.attributesToIndices.get(attributes[i])] != positive[i]) {
+    //index of the i-th example in the shared rows/columns/weights
+    private int row(int i){
+        return this.rowIndices == null ? i : this.rowIndices[i];
+    }
+
+    //the shared rows/columns/weights which are contained in this dataset
+    long[] rowMask(){
+        long[] selection = this.selection();
+        return selection == null ? this.columns().allRows() : selection.clone();
+    }
+
+    //null for datasets which are not views
+    private long[] selection(){
+        if (this.selection == null && this.rowIndices != null){
+            long[] selection = this.columns().noRows();
+            for (int row : this.rowIndices){
+                selection[row >>> 6] |= 1L << row;
+            }
+            this.selection = selection;
+        }
+        return this.selection;
+    }
+
+    //small views are counted by going through their rows instead of intersecting bitsets over all the shared rows
+    private boolean isSparse(){
+        return this.rowIndices != null && (long)this.rowIndices.length*SPARSE_VIEW_RATIO < this.columns().numRows();
+    }
+
+    //rows of a sparse view in increasing order, so that sums are added in the same order as by ColumnStore.sum(...)
+    private int[] sortedRowIndices(){
+        if (this.sortedRowIndices == null){
+            int[] sorted = this.rowIndices.clone();
+            Arrays.sort(sorted);
+            this.sortedRowIndices = sorted;
+        }
+        return this.sortedRowIndices;
+    }
+
+    private boolean covers(int row, int[] attributeIndices, boolean[] positive, FormulaType formulaType){
+        ColumnStore columns = this.columns();
+        if (formulaType == FormulaType.CONJUNCTION){
+            for (int i = 0; i < attributeIndices.length; i++){
+                if (columns.get(row, attributeIndices[i]) != positive[i]){
                     return false;
                 }
             }
             return true;
         } else if (formulaType == FormulaType.DISJUNCTION){
-            for (int i = 0; i < attributes.length; i++) {
-                if (row[this.attributesToIndices.get(attributes[i])] == positive[i]) {
+            for (int i = 0; i < attributeIndices.length; i++){
+                if (columns.get(row, attributeIndices[i]) == positive[i]){
                     return true;
                 }
             }
@@ -240,6 +369,118 @@ public class BinaryDataset {
         throw new UnsupportedOperationException("");
     }
 
+    //the same as ColumnStore.sum(mask(...), values) for sparse views
+    private double sparseSum(int[] attributeIndices, boolean[] positive, double[] values){
+        double retVal = 0;
+        for (int row : this.sortedRowIndices()){
+            if (covers(row, attributeIndices, positive, FormulaType.CONJUNCTION)){
+                retVal += values == null ? 1 : values[row];
+            }
+        }
+        return retVal;
+    }
+
+    //the same as rowsInMask(mask(...)) for sparse views
+    private int[] sparseSelect(int[] attributeIndices, boolean[] positive, FormulaType formulaType){
+        int[] selected = new int[this.rowIndices.length];
+        int j = 0;
+        for (int row : this.rowIndices){
+            if (covers(row, attributeIndices, positive, formulaType)){
+                selected[j++] = row;
+            }
+        }
+        return Arrays.copyOf(selected, j);
+    }
+
+    //indices (in the shared rows) of the examples whose rows are in the mask, in the order of the examples
+    private int[] rowsInMask(long[] mask){
+        if (this.rowIndices == null){
+            return ColumnStore.rowIndices(mask);
+        }
+        int[] retVal = new int[ColumnStore.cardinality(mask)];
+        int j = 0;
+        for (int row : this.rowIndices){
+            if ((mask[row >>> 6] & (1L << row)) != 0){
+                retVal[j++] = row;
+            }
+        }
+        return retVal;
+    }
+
+    //values given for the shared rows (e.g. weights) in the order of the examples
+    private double[] inViewOrder(double[] values){
+        if (values == null || this.rowIndices == null){
+            return values;
+        }
+        double[] retVal = new double[this.rowIndices.length];
+        for (int i = 0; i < retVal.length; i++){
+            retVal[i] = values[this.rowIndices[i]];
+        }
+        return retVal;
+    }
+
+    private boolean[][] rows(){
+        if (this.dataset == null){
+            boolean[][] rows = new boolean[this.columns.numRows()][];
+            for (int i = 0; i < rows.length; i++){
+                rows[i] = this.columns.row(i);
+            }
+            this.dataset = rows;
+        }
+        return this.dataset;
+    }
+
+    ColumnStore columns(){
+        if (this.columns == null){
+            this.columns = HeapColumnStore.fromRows(this.dataset, this.attributeNames == null ? 0 : this.attributeNames.length);
+        }
+        return this.columns;
+    }
+
+    int attributeIndex(String attribute){
+        return this.attributesToIndices.get(attribute);
+    }
+
+    private int[] attributeIndices(String[] attributes){
+        int[] retVal = new int[attributes.length];
+        for (int i = 0; i < attributes.length; i++){
+            retVal[i] = this.attributesToIndices.get(attributes[i]);
+        }
+        return retVal;
+    }
+
+    private boolean check(boolean[] row, int[] attributeIndices, boolean[] positive){
+        for (int i = 0; i < attributeIndices.length; i++) {
+            if (row[attributeIndices[i]] != positive[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //rows (as a bitset) in which the given formula is true
+    private long[] mask(String[] attributes, boolean[] positive, FormulaType formulaType){
+        ColumnStore columns = this.columns();
+        int[] attributeIndices = attributeIndices(attributes);
+        if (formulaType == FormulaType.CONJUNCTION) {
+            long[] mask = this.rowMask();
+            for (int i = 0; i < attributeIndices.length; i++){
+                columns.and(mask, attributeIndices[i], positive[i]);
+            }
+            return mask;
+        } else if (formulaType == FormulaType.DISJUNCTION){
+            long[] mask = columns.disjunction(attributeIndices, positive);
+            long[] selection = this.selection();
+            if (selection != null){
+                for (int i = 0; i < mask.length; i++){
+                    mask[i] &= selection[i];
+                }
+            }
+            return mask;
+        }
+        throw new UnsupportedOperationException("");
+    }
+
     public double count(Clause clause){
         String[] attributes = new String[clause.countLiterals()];
         boolean[] positive = new boolean[attributes.length];
@@ -249,7 +490,7 @@ public class BinaryDataset {
             positive[i] = l.isNegated();
             i++;
         }
-        return numExamples()-count(attributes, positive);
+        return numRepresentedExamples()-count(attributes, positive);
     }
 
 
@@ -266,19 +507,12 @@ public class BinaryDataset {
         return select(attributes, positive, FormulaType.DISJUNCTION);
     }
 
+    //view of the selected examples, all of them with weight 1
     public BinaryDataset select(String[] attributes, boolean[] positive, FormulaType formulaType){
-        List<boolean[]> rows = new ArrayList<boolean[]>();
-        for (boolean[] row : this.dataset){
-            if (check(row, attributes, positive, formulaType)){
-                rows.add(row);
-            }
+        if (this.isSparse()){
+            return view(sparseSelect(attributeIndices(attributes), positive, formulaType), null);
         }
-        boolean[][] newData = new boolean[rows.size()][];
-        int i = 0;
-        for (boolean[] row : rows){
-            newData[i++] = row;
-        }
-        return new BinaryDataset(newData, this.attributeNames);
+        return view(rowsInMask(mask(attributes, positive, formulaType)), null);
     }
 
     public double sum(Clause clause){
@@ -302,7 +536,7 @@ public class BinaryDataset {
             positive[i] = l.isNegated();
             i++;
         }
-        return sumOfWeights()*((double)numSamples/numExamples())-approximateSum(attributes, positive, numSamples, random);
+        return sumOfWeights()*((double)numSamples/numRepresentedExamples())-approximateSum(attributes, positive, numSamples, random);
     }
 
     public double count(Set<Literal> conjunction){
@@ -329,44 +563,102 @@ public class BinaryDataset {
         return sum(attributes, positive);
     }
 
-    public double count(String[] attributes, boolean[] positive){
-        double retVal = 0;
-        for (boolean[] row : this.dataset){
-            if (check(row, attributes, positive, FormulaType.CONJUNCTION)){
-                retVal++;
-            }
-        }
-        return retVal;
+    /**
+     * Counts the examples covered by each of the given conjunctions, intersections of common prefixes
+     * of the conjunctions are shared.
+     * @param conjunctions
+     * @return array whose i-th element is count(conjunctions.get(i))
+     */
+    public double[] count(List<? extends Set<Literal>> conjunctions){
+        return evaluate(conjunctions, this.multiplicities);
     }
 
-    public double sum(String[] attributes, boolean[] positive){
-        double retVal = 0;
+    /**
+     * Sums the weights of the examples covered by each of the given conjunctions, intersections of common prefixes
+     * of the conjunctions are shared.
+     * @param conjunctions
+     * @return array whose i-th element is sum(conjunctions.get(i))
+     */
+    public double[] sum(List<? extends Set<Literal>> conjunctions){
+        return evaluate(conjunctions, this.weights);
+    }
+
+    private double[] evaluate(List<? extends Set<Literal>> conjunctions, double[] weights){
+        int[][] attributeIndices = new int[conjunctions.size()][];
+        boolean[][] positive = new boolean[conjunctions.size()][];
         int i = 0;
-        for (boolean[] row : this.dataset){
-            if (check(row, attributes, positive, FormulaType.CONJUNCTION)){
-                retVal += this.weight(i);
+        for (Set<Literal> conjunction : conjunctions){
+            attributeIndices[i] = new int[conjunction.size()];
+            positive[i] = new boolean[conjunction.size()];
+            int j = 0;
+            for (Literal l : conjunction){
+                attributeIndices[i][j] = this.attributesToIndices.get(l.predicate());
+                positive[i][j] = !l.isNegated();
+                j++;
             }
             i++;
         }
-        return retVal;
+        if (this.isSparse()){
+            double[] retVal = new double[attributeIndices.length];
+            for (int j = 0; j < retVal.length; j++){
+                retVal[j] = sparseSum(attributeIndices[j], positive[j], weights);
+            }
+            return retVal;
+        }
+        return this.columns().evaluate(attributeIndices, positive, weights, this.selection());
+    }
+
+    public double count(String[] attributes, boolean[] positive){
+        if (this.isSparse()){
+            return sparseSum(attributeIndices(attributes), positive, this.multiplicities);
+        }
+        return ColumnStore.sum(mask(attributes, positive, FormulaType.CONJUNCTION), this.multiplicities);
+    }
+
+    public double sum(String[] attributes, boolean[] positive){
+        if (this.isSparse()){
+            return sparseSum(attributeIndices(attributes), positive, this.weights);
+        }
+        return ColumnStore.sum(mask(attributes, positive, FormulaType.CONJUNCTION), this.weights);
     }
 
     public double approximateSum(String[] attributes, boolean[] positive, int numSamples, Random random){
         double retVal = 0;
-        if (this.dataset.length == 0){
+        if (this.numExamples() == 0){
             return 0;
         }
+        int[] attributeIndices = attributeIndices(attributes);
+        //examples of a compacted dataset are sampled in proportion to their multiplicities and contribute the average
+        //weight of the examples they represent, so the estimate has the same scale as for the original dataset
+        double[] cumulative = this.multiplicities == null ? null : this.cumulativeMultiplicities();
         for (int i = 0; i < numSamples; i++){
-            int index = random.nextInt(this.dataset.length);
-            boolean[] row = this.dataset[index];
-            if (check(row, attributes, positive, FormulaType.CONJUNCTION)){
-                retVal += this.weight(index);
+            int index = cumulative == null ? random.nextInt(this.numExamples()) : sample(cumulative, random);
+            boolean[] row = this.example(index);
+            if (check(row, attributeIndices, positive)){
+                retVal += cumulative == null ? this.weight(index) : this.weight(index)/this.multiplicity(index);
             }
             i++;
         }
         return retVal;
     }
 
+    private double[] cumulativeMultiplicities(){
+        double[] retVal = new double[this.numExamples()];
+        double sum = 0;
+        for (int i = 0; i < retVal.length; i++){
+            sum += this.multiplicity(i);
+            retVal[i] = sum;
+        }
+        return retVal;
+    }
+
+    private static int sample(double[] cumulative, Random random){
+        double r = random.nextDouble()*cumulative[cumulative.length-1];
+        int index = Arrays.binarySearch(cumulative, r);
+        index = index < 0 ? -index-1 : index+1;
+        return Math.min(index, cumulative.length-1);
+    }
+
     private boolean[][] rowsToMatrix(List<boolean[]> list){
         boolean[][] retVal = new boolean[list.size()][];
         for (int i = 0; i < list.size(); i++){
@@ -384,6 +676,52 @@ public class BinaryDataset {
         pw.flush();
     }
 
+    /**
+     * Writes the dataset in a compact bit-packed binary format which can be opened by openBinary(File)
+     * without parsing. The weights are stored only if they are not all equal to 1, the multiplicities only
+     * if the dataset was compacted.
+     * @param file
+     * @throws IOException
+     */
+    public void writeBinary(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            writeBinary(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void writeBinary(OutputStream out) throws IOException {
+        double[] w = this.inViewOrder(this.weights);
+        if (w != null){
+            boolean allOnes = true;
+            for (double d : w){
+                if (d != 1.0){
+                    allOnes = false;
+                    break;
+                }
+            }
+            if (allOnes){
+                w = null;
+            }
+        }
+        MappedColumnStore.write(this.rowIndices == null ? this.columns() : this.gatherColumns(this.rowIndices),
+                this.attributeNames == null ? new String[0] : this.attributeNames, w, this.inViewOrder(this.multiplicities), out);
+    }
+
+    /**
+     * Opens a dataset written by writeBinary(...). The columns are memory-mapped, so opening takes (almost) constant time
+     * and count(...) and sum(...) work directly on the mapped data, even when the dataset does not fit in the heap.
+     * Methods which need the rows (e.g. examples(), shuffle(...)) materialize them on the heap.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static BinaryDataset openBinary(File file) throws IOException {
+        return MappedColumnStore.open(file);
+    }
+
     private String header(){
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < this.attributeNames.length; i++){
@@ -428,7 +766,17 @@ public class BinaryDataset {
         return new BinaryDataset(data, header);
     }
 
-    private static String[] parseHeaderRow(String line){
+    /**
+     * Reads a CSV file by CSVChunkReader, which parses the bytes directly into bit-packed columns.
+     * @param inputStream
+     * @return
+     * @throws IOException
+     */
+    public static BinaryDataset readCSV(InputStream inputStream) throws IOException {
+        return new CSVChunkReader().read(inputStream);
+    }
+
+    static String[] parseHeaderRow(String line){
         line = line.trim();
         if (line.charAt(line.length()-1) == ','){
             line = line.substring(0, line.length()-1);
@@ -460,7 +808,7 @@ public class BinaryDataset {
         return row;
     }
 
-    private static boolean isHeaderLine(String line){
+    static boolean isHeaderLine(String line){
         String[] split = line.split(",");
         for (int i = 0; i < split.length; i++){
             split[i] = split[i].trim();
@@ -499,28 +847,27 @@ public class BinaryDataset {
         return false;
     }
 
+    //both parts are views of this dataset
     public Pair<BinaryDataset,BinaryDataset> randomSplit(double fraction, Random random){
-        int[] indexes = VectorUtils.sequence(0, this.dataset.length-1);
+        int[] indexes = VectorUtils.sequence(0, this.numExamples()-1);
         VectorUtils.shuffle(indexes, random);
-        boolean[][] datasetA = new boolean[(int)Math.ceil(dataset.length*fraction)][];
-        double[] weightsA = new double[datasetA.length];
-        boolean[][] datasetB = new boolean[this.dataset.length-datasetA.length][];
-        double[] weightsB = new double[datasetB.length];
-        for (int i = 0; i < datasetA.length; i++){
-            datasetA[i] = this.dataset[indexes[i]];
-            weightsA[i] = this.weights[indexes[i]];
+        int[] rowsA = new int[(int)Math.ceil(this.numExamples()*fraction)];
+        int[] rowsB = new int[this.numExamples()-rowsA.length];
+        for (int i = 0; i < rowsA.length; i++){
+            rowsA[i] = this.row(indexes[i]);
         }
-        for (int i = 0; i < datasetB.length; i++){
-            datasetB[i] = this.dataset[indexes[datasetA.length+i]];
-            weightsB[i] = this.weights[indexes[datasetA.length+i]];
+        for (int i = 0; i < rowsB.length; i++){
+            rowsB[i] = this.row(indexes[rowsA.length+i]);
         }
-        return new Pair<BinaryDataset,BinaryDataset>(
-                new BinaryDataset(datasetA, this.attributeNames, weightsA),
-                new BinaryDataset(datasetB, this.attributeNames, weightsB));
+        return new Pair<BinaryDataset,BinaryDataset>(view(rowsA, this.weights), view(rowsB, this.weights));
     }
 
     public boolean[] example(int index){
-        return this.dataset[index];
+        int row = this.row(index);
+        if (this.dataset == null){
+            return this.columns.row(row);
+        }
+        return this.dataset[row];
     }
 
     public Set<Literal> exampleAsSetOfLiterals(int index){
@@ -539,8 +886,15 @@ public class BinaryDataset {
         }
         boolean[][] data = new boolean[numExamples][];
         double[] weights = new double[numExamples];
+        double[] multiplicities = null;
         String[] attributes = null;
         int index = 0;
+        for (BinaryDataset dataset : datasets){
+            if (dataset.multiplicities != null && multiplicities == null){
+                multiplicities = new double[numExamples];
+                Arrays.fill(multiplicities, 1.0);
+            }
+        }
         for (BinaryDataset dataset : datasets){
             if (attributes == null){
                 attributes = dataset.attributes();
@@ -549,25 +903,145 @@ public class BinaryDataset {
             }
             System.arraycopy(dataset.examples(), 0, data, index, (int)dataset.numExamples());
             System.arraycopy(dataset.weights(), 0, weights, index, (int)dataset.numExamples());
+            if (dataset.multiplicities != null){
+                System.arraycopy(dataset.inViewOrder(dataset.multiplicities), 0, multiplicities, index, (int)dataset.numExamples());
+            }
             index += dataset.numExamples();
         }
-        return new BinaryDataset(data, attributes, weights);
+        BinaryDataset retVal = new BinaryDataset(data, attributes, weights);
+        retVal.multiplicities = multiplicities;
+        return retVal;
     }
 
     public double weight(int index){
-        return this.weights[index];
+        return this.weights == null ? 1.0 : this.weights[this.row(index)];
     }
 
     public double[] weights(){
+        if (this.rowIndices != null){
+            double[] retVal = new double[this.numExamples()];
+            for (int i = 0; i < retVal.length; i++){
+                retVal[i] = this.weight(i);
+            }
+            return retVal;
+        }
+        if (this.weights == null){
+            this.weights = new double[numExamples()];
+            Arrays.fill(this.weights, 1.0);
+        }
         return this.weights;
     }
 
     public boolean[][] examples(){
-        return this.dataset;
+        if (this.rowIndices != null){
+            boolean[][] rows = this.rows();
+            boolean[][] retVal = new boolean[this.rowIndices.length][];
+            for (int i = 0; i < retVal.length; i++){
+                retVal[i] = rows[this.rowIndices[i]];
+            }
+            return retVal;
+        }
+        return this.rows();
     }
 
     public BinaryDataset copy(){
-        return new BinaryDataset(this.dataset, this.attributeNames, this.weights);
+        if (this.rowIndices != null){
+            return view(this.rowIndices, this.weights);
+        } else if (this.dataset == null){
+            return new BinaryDataset(this.columns, this.attributeNames, this.weights, this.multiplicities);
+        }
+        BinaryDataset retVal = new BinaryDataset(this.dataset, this.attributeNames, this.weights);
+        retVal.multiplicities = this.multiplicities;
+        return retVal;
+    }
+
+    //copy of the given shared rows (in the given order) as columns
+    private ColumnStore gatherColumns(int[] rows){
+        ColumnStore columns = this.columns();
+        long[][] gathered = new long[columns.numColumns()][ColumnStore.numWords(rows.length)];
+        for (int j = 0; j < gathered.length; j++){
+            for (int i = 0; i < rows.length; i++){
+                if (columns.get(rows[i], j)){
+                    gathered[j][i >>> 6] |= 1L << i;
+                }
+            }
+        }
+        return new HeapColumnStore(gathered, rows.length);
+    }
+
+    /**
+     * Merges identical examples into one example whose weight is the sum of their weights and whose multiplicity is
+     * the number of original examples it represents. count(...) sums the multiplicities of the covered examples, so
+     * both count(...) and sum(...) return the same values as on this dataset. The examples are kept in the order
+     * of their first occurrences.
+     * @return
+     */
+    public BinaryDataset compact(){
+        Map<PackedRow,Integer> distinct = new HashMap<PackedRow,Integer>();
+        int[] rows = new int[this.numExamples()];
+        double[] newWeights = new double[this.numExamples()];
+        double[] newMultiplicities = new double[this.numExamples()];
+        int num = 0;
+        for (int i = 0; i < this.numExamples(); i++){
+            PackedRow packed = new PackedRow(this.example(i));
+            Integer index = distinct.get(packed);
+            if (index == null){
+                index = num++;
+                distinct.put(packed, index);
+                rows[index] = this.row(i);
+            }
+            newWeights[index] += this.weight(i);
+            newMultiplicities[index] += this.multiplicity(i);
+        }
+        return new BinaryDataset(this.gatherColumns(Arrays.copyOf(rows, num)), this.attributeNames,
+                Arrays.copyOf(newWeights, num), Arrays.copyOf(newMultiplicities, num));
+    }
+
+    public double multiplicity(int index){
+        return this.multiplicities == null ? 1.0 : this.multiplicities[this.row(index)];
+    }
+
+    /**
+     *
+     * @return number of the original examples, i.e. the sum of multiplicities (equal to numExamples() unless
+     * the dataset was compacted)
+     */
+    public double numRepresentedExamples(){
+        if (this.multiplicities == null){
+            return numExamples();
+        }
+        double retVal = 0;
+        for (int i = 0; i < this.numExamples(); i++){
+            retVal += this.multiplicity(i);
+        }
+        return retVal;
+    }
+
+    private static class PackedRow {
+
+        private long[] bits;
+
+        private int hashCode;
+
+        private PackedRow(boolean[] row){
+            this.bits = new long[ColumnStore.numWords(row.length)];
+            for (int j = 0; j < row.length; j++){
+                if (row[j]){
+                    this.bits[j >>> 6] |= 1L << j;
+                }
+            }
+            this.hashCode = Arrays.hashCode(this.bits);
+        }
+
+        @Override
+        public int hashCode(){
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof PackedRow && Arrays.equals(this.bits, ((PackedRow)o).bits);
+        }
     }
 
     public boolean[] attributeValues(String attributeName){
@@ -576,30 +1050,41 @@ public class BinaryDataset {
 
     public boolean[] attributeValues(int attributeIndex){
         boolean[] retVal = new boolean[(int)this.numExamples()];
-        int i = 0;
-        for (boolean[] row : this.dataset){
-            retVal[i] = row[attributeIndex];
-            i++;
+        ColumnStore columns = this.columns();
+        for (int i = 0; i < retVal.length; i++){
+            retVal[i] = columns.get(this.row(i), attributeIndex);
         }
         return retVal;
     }
 
+    /**
+     * Builds an index which is then used by neighbourhood(boolean[], int). The index is dropped when the examples
+     * are shuffled or replaced.
+     * @param maxRadius the largest radius of the neighbourhood queries which should be fast
+     * @return the index
+     */
+    public HammingIndex buildHammingIndex(int maxRadius){
+        this.hammingIndex = new HammingIndex(this, maxRadius);
+        return this.hammingIndex;
+    }
+
+    //view of the examples in the given Hamming distance from center
     public BinaryDataset neighbourhood(boolean[] center, int radius){
-        List<boolean[]> list = new ArrayList<boolean[]>();
-        List<Double> weights = new ArrayList<Double>();
-        for (int i = 0; i < this.dataset.length; i++){
-            if (VectorUtils.hammingDistance(center, this.dataset[i]) <= radius){
-                list.add(this.dataset[i]);
-                weights.add(this.weights[i]);
+        if (this.hammingIndex != null){
+            int[] rows = this.hammingIndex.query(center, radius);
+            for (int i = 0; i < rows.length; i++){
+                rows[i] = this.row(rows[i]);
             }
+            return view(rows, this.weights);
         }
-        boolean[][] data = new boolean[list.size()][];
-        double[] w = new double[list.size()];
-        for (int i = 0; i < list.size(); i++){
-            data[i] = list.get(i);
-            w[i] = weights.get(i);
+        int[] rows = new int[this.numExamples()];
+        int num = 0;
+        for (int i = 0; i < this.numExamples(); i++){
+            if (VectorUtils.hammingDistance(center, this.example(i)) <= radius){
+                rows[num++] = this.row(i);
+            }
         }
-        return new BinaryDataset(data, this.attributes(), w);
+        return view(Arrays.copyOf(rows, num), this.weights);
     }
 
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+/**
+ * Word-level kernels used by HeapColumnStore and ColumnStore for evaluating conjunctions and counting rows.
+ * The implementation is chosen once, when the class is loaded: the class named by the system property
+ * logicStuff.learning.kernels or, if the property is not set, VectorBitKernels (which uses the incubating Vector API
+ * and is compiled separately from src-vector, see its documentation). If the class cannot be loaded, ScalarBitKernels
+ * is used and the reason is reported on System.err (except when the default VectorBitKernels is simply not on the classpath,
+ * running this class prints the kernels which are actually used).
+ */
+public abstract class BitKernels {
+
+    public final static String PROPERTY = "logicStuff.learning.kernels";
+
+    final static String VECTOR_KERNELS = "logicStuff.learning.VectorBitKernels";
+
+    private final static BitKernels instance = load(System.getProperty(PROPERTY));
+
+    public static BitKernels get(){
+        return instance;
+    }
+
+    private static BitKernels load(String className){
+        boolean explicit = className != null;
+        if (!explicit){
+            className = VECTOR_KERNELS;
+        }
+        try {
+            return (BitKernels)Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e){
+            if (explicit){
+                System.err.println("Bit kernels "+className+" not found, falling back to ScalarBitKernels");
+            }
+        } catch (Exception e){
+            System.err.println("Bit kernels "+className+" could not be instantiated, falling back to ScalarBitKernels: "+e);
+        } catch (LinkageError e){
+            //e.g. VectorBitKernels on a JVM started without --add-modules jdk.incubator.vector
+            System.err.println("Bit kernels "+className+" could not be loaded, falling back to ScalarBitKernels: "+e);
+        }
+        return new ScalarBitKernels();
+    }
+
+    // mask &= (positive ? column : ~column)
+    public abstract void and(long[] mask, long[] column, boolean positive);
+
+    // target = source & (positive ? column : ~column)
+    public abstract void andInto(long[] target, long[] source, long[] column, boolean positive);
+
+    // mask |= (positive ? column : ~column), the tail of the mask is not cleared
+    public abstract void or(long[] mask, long[] column, boolean positive);
+
+    public abstract int cardinality(long[] mask);
+
+    /**
+     * Sums the weights of the rows in the given mask, adding them in the order of the rows (VectorBitKernels can be
+     * allowed to reorder the additions, see there).
+     * @param mask
+     * @param weights
+     * @return
+     */
+    public abstract double sum(long[] mask, double[] weights);
+
+    public static void main(String[] args){
+        System.out.println(get());
+    }
+}
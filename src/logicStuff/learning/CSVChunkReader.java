@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Streaming reader of CSV files with binary data (the same format as read by BinaryDataset.readCSV(Reader)). The bytes
+ * are parsed directly into bit-packed columns in chunks of a fixed number of rows, no Strings are created for the data rows.
+ * The chunks become the segments of a SegmentedColumnStore, so the peak memory is close to the size of the packed dataset.
+ * Chunks can be parsed in parallel, or they can be passed one by one to a ChunkHandler without keeping them in memory.
+ */
+public class CSVChunkReader {
+
+    private int chunkRows = 1 << 14;
+
+    private int parallelism = 1;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    public interface ChunkHandler {
+
+        /**
+         *
+         * @param chunk the next chunk of rows (at most chunkRows of them)
+         * @param firstRow index of the first row of the chunk in the whole file
+         */
+        public void chunk(BinaryDataset chunk, long firstRow);
+
+    }
+
+    public CSVChunkReader(){}
+
+    /**
+     *
+     * @param chunkRows number of rows in a chunk, rounded up to a power of two which is at least 64
+     * @param parallelism number of threads parsing the chunks
+     */
+    public CSVChunkReader(int chunkRows, int parallelism){
+        this.chunkRows = Math.max(64, Integer.highestOneBit(Math.max(1, chunkRows-1)) << 1);
+        this.parallelism = parallelism;
+    }
+
+    public BinaryDataset read(InputStream inputStream) throws IOException {
+        final List<long[][]> segments = new ArrayList<long[][]>();
+        final long[] numRows = new long[1];
+        String[] header = read(inputStream, new ChunkConsumer() {
+            @Override
+            public void consume(long[][] segment, int rows, String[] header, long firstRow) {
+                segments.add(segment);
+                numRows[0] += rows;
+            }
+        });
+        if (numRows[0] > Integer.MAX_VALUE){
+            throw new IllegalStateException("Too many rows: "+numRows[0]);
+        }
+        int numColumns = header == null ? 0 : header.length;
+        return new BinaryDataset(new SegmentedColumnStore(segments, this.chunkRows >>> 6, numColumns, (int)numRows[0]), header, null);
+    }
+
+    public void read(InputStream inputStream, final ChunkHandler handler) throws IOException {
+        read(inputStream, new ChunkConsumer() {
+            @Override
+            public void consume(long[][] segment, int rows, String[] header, long firstRow) {
+                handler.chunk(new BinaryDataset(new HeapColumnStore(segment, rows), header, null), firstRow);
+            }
+        });
+    }
+
+    private interface ChunkConsumer {
+
+        public void consume(long[][] segment, int rows, String[] header, long firstRow);
+
+    }
+
+    //returns the attribute names (generated ones if the file has no header)
+    private String[] read(InputStream inputStream, ChunkConsumer consumer) throws IOException {
+        InputStream in = inputStream instanceof BufferedInputStream ? inputStream : new BufferedInputStream(inputStream, 1 << 16);
+        ExecutorService executor = this.parallelism > 1 ? Executors.newFixedThreadPool(this.parallelism) : null;
+        ArrayDeque<Future<long[][]>> pending = new ArrayDeque<Future<long[][]>>();
+        ArrayDeque<Integer> pendingRows = new ArrayDeque<Integer>();
+        long delivered = 0;
+        String[] header = null;
+        int numColumns = -1;
+
+        byte[] buffer = new byte[1 << 16];
+        Block block = new Block();
+        int lineStart = 0;
+        boolean blank = true;
+        try {
+            int read;
+            boolean eof = false;
+            while (!eof){
+                read = in.read(buffer);
+                if (read < 0){
+                    eof = true;
+                    read = 0;
+                }
+                for (int i = 0; i <= read; i++){
+                    boolean endOfLine = i < read ? buffer[i] == '\n' : eof;
+                    if (i < read && !endOfLine){
+                        byte b = buffer[i];
+                        block.append(b);
+                        if (b != ' ' && b != '\t' && b != '\r'){
+                            blank = false;
+                        }
+                        continue;
+                    }
+                    if (!endOfLine){
+                        break;
+                    }
+                    if (blank){
+                        block.length = lineStart;
+                    } else if (numColumns < 0){
+                        String firstLine = new String(block.bytes, lineStart, block.length-lineStart, UTF8).trim();
+                        if (BinaryDataset.isHeaderLine(firstLine)){
+                            header = BinaryDataset.parseHeaderRow(firstLine);
+                            numColumns = header.length;
+                            block.length = lineStart;
+                        } else {
+                            numColumns = BinaryDataset.parseHeaderRow(firstLine).length;
+                            block.append((byte)'\n');
+                            block.rows++;
+                        }
+                    } else {
+                        block.append((byte)'\n');
+                        block.rows++;
+                    }
+                    lineStart = block.length;
+                    blank = true;
+                    if (block.rows == this.chunkRows){
+                        submit(block, numColumns, executor, pending, pendingRows);
+                        block = new Block();
+                        lineStart = 0;
+                        while (pending.size() > 2*this.parallelism){
+                            delivered += deliver(pending, pendingRows, header, numColumns, delivered, consumer);
+                        }
+                    }
+                }
+            }
+            if (block.rows > 0){
+                submit(block, numColumns, executor, pending, pendingRows);
+            }
+            while (!pending.isEmpty()){
+                delivered += deliver(pending, pendingRows, header, numColumns, delivered, consumer);
+            }
+        } finally {
+            if (executor != null){
+                executor.shutdownNow();
+            }
+        }
+        if (header == null && numColumns >= 0){
+            header = new String[numColumns];
+            for (int j = 0; j < numColumns; j++){
+                header[j] = String.valueOf(j);
+            }
+        }
+        return header;
+    }
+
+    private void submit(final Block block, final int numColumns, ExecutorService executor, ArrayDeque<Future<long[][]>> pending, ArrayDeque<Integer> pendingRows){
+        Callable<long[][]> task = new Callable<long[][]>() {
+            @Override
+            public long[][] call() throws Exception {
+                return parse(block, numColumns);
+            }
+        };
+        FutureTask<long[][]> future = new FutureTask<long[][]>(task);
+        if (executor == null){
+            future.run();
+        } else {
+            executor.execute(future);
+        }
+        pending.add(future);
+        pendingRows.add(block.rows);
+    }
+
+    private int deliver(ArrayDeque<Future<long[][]>> pending, ArrayDeque<Integer> pendingRows, String[] header, int numColumns, long firstRow, ChunkConsumer consumer) throws IOException {
+        long[][] segment;
+        try {
+            segment = pending.poll().get();
+        } catch (InterruptedException e){
+            throw new IOException(e);
+        } catch (ExecutionException e){
+            throw new IOException(e.getCause());
+        }
+        int rows = pendingRows.poll();
+        String[] attributes = header;
+        if (attributes == null){
+            attributes = new String[numColumns];
+            for (int j = 0; j < numColumns; j++){
+                attributes[j] = String.valueOf(j);
+            }
+        }
+        consumer.consume(segment, rows, attributes, firstRow);
+        return rows;
+    }
+
+    private long[][] parse(Block block, int numColumns){
+        long[][] segment = new long[numColumns][this.chunkRows >>> 6];
+        byte[] bytes = block.bytes;
+        int row = 0;
+        int start = 0;
+        int column = 0;
+        for (int p = 0; p < block.length; p++){
+            byte b = bytes[p];
+            if (b == ',' || b == '\n'){
+                if (column < numColumns && isTrue(bytes, start, p)){
+                    segment[column][row >>> 6] |= 1L << row;
+                }
+                column++;
+                start = p+1;
+                if (b == '\n'){
+                    row++;
+                    column = 0;
+                }
+            }
+        }
+        return segment;
+    }
+
+    //true iff the trimmed cell is (case-insensitively) one of "1", "t", "true"
+    private static boolean isTrue(byte[] bytes, int start, int end){
+        while (start < end && isWhitespace(bytes[start])){
+            start++;
+        }
+        while (end > start && isWhitespace(bytes[end-1])){
+            end--;
+        }
+        int length = end-start;
+        if (length == 1){
+            byte b = bytes[start];
+            return b == '1' || b == 't' || b == 'T';
+        } else if (length == 4){
+            return (bytes[start] | 0x20) == 't' && (bytes[start+1] | 0x20) == 'r' && (bytes[start+2] | 0x20) == 'u' && (bytes[start+3] | 0x20) == 'e';
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace(byte b){
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    //bytes of the non-blank lines of one chunk, each of them terminated by '\n'
+    private static class Block {
+
+        private byte[] bytes = new byte[1 << 16];
+
+        private int length;
+
+        private int rows;
+
+        private void append(byte b){
+            if (this.length == this.bytes.length){
+                this.bytes = Arrays.copyOf(this.bytes, 2*this.bytes.length);
+            }
+            this.bytes[this.length++] = b;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import ida.ilp.logic.*;
+
+import java.util.*;
+
+/**
+ * Clause together with its canonical form: a string which is the same for two clauses iff they are isomorphic (i.e. they
+ * differ only in names of variables). It can be used instead of IsoClauseWrapper as a key in hash maps and sets.
+ *
+ * The canonical form is computed by colouring the variables by isomorphism-invariant properties (the predicates, signs
+ * and argument positions in which they occur, refined iteratively by the colours of their neighbours) and then trying
+ * all orderings of the variables which respect the colours, the lexicographically smallest string wins. This is meant
+ * for small clauses (as in ShortConstraintLearner), the number of tried orderings grows with factorials of the sizes
+ * of the colour classes. Canonical forms are cached (in a cache shared by all threads, see setCacheSize(...) and
+ * clearCache()), so a clause which is wrapped repeatedly is processed only once.
+ */
+public class CanonicalClause {
+
+    //null if the cache is switched off
+    private static volatile LRUCache<Clause,CanonicalClause> cache = new LRUCache<Clause,CanonicalClause>(1 << 16, LRUCache.CONCURRENT_STRIPES);
+
+    private Clause clause;
+
+    private String canonicalForm;
+
+    //clause with variables renamed to V0, V1, ... according to the canonical ordering
+    private Clause representative;
+
+    public CanonicalClause(Clause clause){
+        LRUCache<Clause,CanonicalClause> cache = CanonicalClause.cache;
+        CanonicalClause cached = cache == null ? null : cache.get(clause);
+        if (cached == null){
+            cached = compute(clause);
+            if (cache != null){
+                cache.put(clause, cached);
+            }
+        }
+        this.clause = clause;
+        this.canonicalForm = cached.canonicalForm;
+        this.representative = cached.representative;
+    }
+
+    private CanonicalClause(Clause clause, String canonicalForm, Clause representative){
+        this.clause = clause;
+        this.canonicalForm = canonicalForm;
+        this.representative = representative;
+    }
+
+    public static String canonicalForm(Clause clause){
+        return new CanonicalClause(clause).canonicalForm;
+    }
+
+    /**
+     * Replaces the cache of canonical forms by an empty one of the given size.
+     * @param maxSize maximum number of cached clauses, 0 switches the cache off
+     */
+    public static void setCacheSize(int maxSize){
+        cache = maxSize > 0 ? new LRUCache<Clause,CanonicalClause>(maxSize, LRUCache.CONCURRENT_STRIPES) : null;
+    }
+
+    /**
+     * Removes all cached canonical forms (e.g. when a learner which created them has finished).
+     */
+    public static void clearCache(){
+        LRUCache<Clause,CanonicalClause> cache = CanonicalClause.cache;
+        if (cache != null){
+            cache.clear();
+        }
+    }
+
+    public Clause getOriginalClause(){
+        return this.clause;
+    }
+
+    /**
+     *
+     * @return the clause with variables renamed canonically, all isomorphic clauses have the same representative
+     */
+    public Clause representative(){
+        return this.representative;
+    }
+
+    public String canonicalForm(){
+        return this.canonicalForm;
+    }
+
+    private static CanonicalClause compute(Clause clause){
+        List<Variable> variables = new ArrayList<Variable>(clause.variables());
+        final Map<Variable,String> colours = colours(clause, variables);
+        Collections.sort(variables, new Comparator<Variable>() {
+            @Override
+            public int compare(Variable o1, Variable o2) {
+                return colours.get(o1).compareTo(colours.get(o2));
+            }
+        });
+        //cells of variables with the same colour, in the order of the colours
+        List<List<Variable>> cells = new ArrayList<List<Variable>>();
+        for (int i = 0; i < variables.size(); i++){
+            if (i == 0 || !colours.get(variables.get(i)).equals(colours.get(variables.get(i-1)))){
+                cells.add(new ArrayList<Variable>());
+            }
+            cells.get(cells.size()-1).add(variables.get(i));
+        }
+        Map<Variable,Integer> best = new HashMap<Variable,Integer>();
+        String bestString = search(clause, cells, 0, new HashMap<Variable,Integer>(), null, best);
+        Map<Term,Term> renaming = new HashMap<Term,Term>();
+        for (Map.Entry<Variable,Integer> entry : best.entrySet()){
+            renaming.put(entry.getKey(), Variable.construct("V"+entry.getValue()));
+        }
+        return new CanonicalClause(clause, bestString, LogicUtils.substitute(clause, renaming));
+    }
+
+    //tries all orderings of the variables in the cells (cells are kept in their order), returns the smallest string
+    private static String search(Clause clause, List<List<Variable>> cells, int cellIndex, Map<Variable,Integer> ordering, String bestString, Map<Variable,Integer> best){
+        if (cellIndex == cells.size()){
+            String s = toString(clause, ordering);
+            if (bestString == null || s.compareTo(bestString) < 0){
+                best.clear();
+                best.putAll(ordering);
+                return s;
+            }
+            return bestString;
+        }
+        List<Variable> cell = cells.get(cellIndex);
+        int offset = ordering.size();
+        int[] permutation = new int[cell.size()];
+        for (int i = 0; i < permutation.length; i++){
+            permutation[i] = i;
+        }
+        do {
+            for (int i = 0; i < permutation.length; i++){
+                ordering.put(cell.get(permutation[i]), offset+i);
+            }
+            bestString = search(clause, cells, cellIndex+1, ordering, bestString, best);
+        } while (nextPermutation(permutation));
+        for (Variable v : cell){
+            ordering.remove(v);
+        }
+        return bestString;
+    }
+
+    private static String toString(Clause clause, Map<Variable,Integer> ordering){
+        List<String> literals = new ArrayList<String>();
+        for (Literal l : clause.literals()){
+            literals.add(literalToString(l, ordering, null, null));
+        }
+        Collections.sort(literals);
+        StringBuilder sb = new StringBuilder();
+        for (String s : literals){
+            sb.append(s).append(';');
+        }
+        return sb.toString();
+    }
+
+    //variables are written using ordering (if it is not null) or colours, the given variable (if not null) as *
+    private static String literalToString(Literal l, Map<Variable,Integer> ordering, Map<Variable,String> colours, Variable marked){
+        StringBuilder sb = new StringBuilder();
+        if (l.isNegated()){
+            sb.append('!');
+        }
+        sb.append(l.predicate()).append('(');
+        for (int i = 0; i < l.arity(); i++){
+            if (i > 0){
+                sb.append(',');
+            }
+            Term t = l.get(i);
+            if (t instanceof Variable){
+                if (t.equals(marked)){
+                    sb.append('*');
+                } else if (ordering != null){
+                    sb.append(ordering.get(t));
+                } else {
+                    sb.append('[').append(colours.get(t)).append(']');
+                }
+            } else {
+                sb.append('\'').append(t.name()).append('\'');
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+    //iteratively refined colours of variables, colours are renamed to short strings after every round
+    private static Map<Variable,String> colours(Clause clause, List<Variable> variables){
+        Map<Variable,String> colours = new HashMap<Variable,String>();
+        for (Variable v : variables){
+            colours.put(v, "");
+        }
+        int numColours = variables.isEmpty() ? 0 : 1;
+        for (int round = 0; round < variables.size(); round++){
+            Map<Variable,String> newColours = new HashMap<Variable,String>();
+            for (Variable v : variables){
+                List<String> occurrences = new ArrayList<String>();
+                for (Literal l : clause.literals()){
+                    for (int i = 0; i < l.arity(); i++){
+                        if (l.get(i).equals(v)){
+                            occurrences.add(literalToString(l, null, colours, v));
+                            break;
+                        }
+                    }
+                }
+                Collections.sort(occurrences);
+                newColours.put(v, colours.get(v)+"|"+occurrences);
+            }
+            //compress the colours
+            List<String> distinct = new ArrayList<String>(new TreeSet<String>(newColours.values()));
+            for (Variable v : variables){
+                newColours.put(v, String.valueOf(Collections.binarySearch(distinct, newColours.get(v))));
+            }
+            colours = newColours;
+            if (distinct.size() == numColours && round > 0){
+                break;
+            }
+            numColours = distinct.size();
+        }
+        return colours;
+    }
+
+    private static boolean nextPermutation(int[] p){
+        int i = p.length-2;
+        while (i >= 0 && p[i] >= p[i+1]){
+            i--;
+        }
+        if (i < 0){
+            return false;
+        }
+        int j = p.length-1;
+        while (p[j] <= p[i]){
+            j--;
+        }
+        int tmp = p[i];
+        p[i] = p[j];
+        p[j] = tmp;
+        for (int a = i+1, b = p.length-1; a < b; a++, b--){
+            tmp = p[a];
+            p[a] = p[b];
+            p[b] = tmp;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o instanceof CanonicalClause && ((CanonicalClause)o).canonicalForm.equals(this.canonicalForm);
+    }
+
+    @Override
+    public int hashCode(){
+        return this.canonicalForm.hashCode();
+    }
+
+    @Override
+    public String toString(){
+        return this.clause.toString();
+    }
+}
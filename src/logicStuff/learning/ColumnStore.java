@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Column-major storage of a binary dataset. Every attribute is stored as a bitset over the rows
+ * (bit i of the column is set iff the attribute is true in the i-th row), so that conjunctions
+ * and disjunctions of literals can be evaluated word by word.
+ *
+ * Masks passed to the methods of this class are bitsets over rows of length numWords(). Bits beyond numRows()
+ * in the last word are kept at zero by all the operations.
+ */
+public abstract class ColumnStore {
+
+    public abstract int numRows();
+
+    public abstract int numColumns();
+
+    /**
+     *
+     * @param column index of the attribute
+     * @param wordIndex index of the 64-row block
+     * @return the 64 values of the given attribute in rows wordIndex*64, ..., wordIndex*64+63
+     */
+    public abstract long word(int column, int wordIndex);
+
+    public int numWords(){
+        return numWords(numRows());
+    }
+
+    public static int numWords(int numRows){
+        return (numRows+63) >>> 6;
+    }
+
+    public boolean get(int row, int column){
+        return (word(column, row >>> 6) & (1L << row)) != 0;
+    }
+
+    public long[] allRows(){
+        long[] mask = new long[numWords()];
+        Arrays.fill(mask, -1L);
+        clearTail(mask);
+        return mask;
+    }
+
+    public long[] noRows(){
+        return new long[numWords()];
+    }
+
+    // mask &= (positive ? column : ~column)
+    public void and(long[] mask, int column, boolean positive){
+        if (positive){
+            for (int i = 0; i < mask.length; i++){
+                mask[i] &= word(column, i);
+            }
+        } else {
+            for (int i = 0; i < mask.length; i++){
+                mask[i] &= ~word(column, i);
+            }
+        }
+    }
+
+    // mask |= (positive ? column : ~column)
+    public void or(long[] mask, int column, boolean positive){
+        if (positive){
+            for (int i = 0; i < mask.length; i++){
+                mask[i] |= word(column, i);
+            }
+        } else {
+            for (int i = 0; i < mask.length; i++){
+                mask[i] |= ~word(column, i);
+            }
+            clearTail(mask);
+        }
+    }
+
+    // target = source & (positive ? column : ~column)
+    public void andInto(long[] target, long[] source, int column, boolean positive){
+        System.arraycopy(source, 0, target, 0, target.length);
+        and(target, column, positive);
+    }
+
+    public long[] conjunction(int[] columns, boolean[] positive){
+        long[] mask = allRows();
+        for (int i = 0; i < columns.length; i++){
+            and(mask, columns[i], positive[i]);
+        }
+        return mask;
+    }
+
+    public long[] disjunction(int[] columns, boolean[] positive){
+        long[] mask = noRows();
+        for (int i = 0; i < columns.length; i++){
+            or(mask, columns[i], positive[i]);
+        }
+        return mask;
+    }
+
+    /**
+     * Evaluates many conjunctions at once. The conjunctions are visited in lexicographic order of their
+     * (column, sign) sequences so that the intersection of a common prefix of consecutive conjunctions is computed
+     * only once.
+     *
+     * @param columns columns[i] are the attributes of the i-th conjunction
+     * @param positive positive[i][j] is true iff the j-th literal of the i-th conjunction is positive
+     * @param weights if null, the numbers of rows covered by the conjunctions are returned, otherwise sums of the weights of these rows
+     * @param rows if not null, only these rows are considered
+     * @return counts (or sums of weights) of the conjunctions, in the order in which they were given
+     */
+    public double[] evaluate(int[][] columns, boolean[][] positive, double[] weights, long[] rows){
+        final int[][] codes = new int[columns.length][];
+        int maxLength = 0;
+        for (int i = 0; i < columns.length; i++){
+            codes[i] = new int[columns[i].length];
+            for (int j = 0; j < codes[i].length; j++){
+                codes[i][j] = 2*columns[i][j]+(positive[i][j] ? 1 : 0);
+            }
+            Arrays.sort(codes[i]);
+            maxLength = Math.max(maxLength, codes[i].length);
+        }
+        Integer[] order = new Integer[columns.length];
+        for (int i = 0; i < order.length; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int[] a = codes[o1], b = codes[o2];
+                for (int i = 0; i < Math.min(a.length, b.length); i++){
+                    if (a[i] != b[i]){
+                        return a[i] < b[i] ? -1 : 1;
+                    }
+                }
+                return a.length-b.length;
+            }
+        });
+        //stack[d] is the intersection of the first d literals of the previously evaluated conjunction
+        long[][] stack = new long[maxLength+1][];
+        stack[0] = rows == null ? allRows() : rows;
+        for (int d = 1; d <= maxLength; d++){
+            stack[d] = new long[stack[0].length];
+        }
+        double[] retVal = new double[columns.length];
+        int[] previous = new int[0];
+        for (int index : order){
+            int[] current = codes[index];
+            int common = 0;
+            while (common < current.length && common < previous.length && current[common] == previous[common]){
+                common++;
+            }
+            for (int d = common; d < current.length; d++){
+                andInto(stack[d+1], stack[d], current[d] >>> 1, (current[d] & 1) == 1);
+            }
+            long[] mask = stack[current.length];
+            retVal[index] = weights == null ? cardinality(mask) : sum(mask, weights);
+            previous = current;
+        }
+        return retVal;
+    }
+
+    public boolean[] row(int row){
+        boolean[] retVal = new boolean[numColumns()];
+        for (int j = 0; j < retVal.length; j++){
+            retVal[j] = get(row, j);
+        }
+        return retVal;
+    }
+
+    protected void clearTail(long[] mask){
+        int rem = numRows() & 63;
+        if (rem != 0 && mask.length > 0){
+            mask[mask.length-1] &= (1L << rem)-1;
+        }
+    }
+
+    public static int cardinality(long[] mask){
+        return BitKernels.get().cardinality(mask);
+    }
+
+    public static boolean isEmpty(long[] mask){
+        for (long word : mask){
+            if (word != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sums the weights of the rows in the given mask. The weights are added in the order of the rows,
+     * so the result is the same as the one obtained by a sequential scan over the rows.
+     * @param mask
+     * @param weights weights of the rows, null means that all rows have weight 1
+     * @return
+     */
+    public static double sum(long[] mask, double[] weights){
+        if (weights == null){
+            return cardinality(mask);
+        }
+        return BitKernels.get().sum(mask, weights);
+    }
+
+    /**
+     *
+     * @param mask
+     * @return indices of the rows contained in the mask, in increasing order
+     */
+    public static int[] rowIndices(long[] mask){
+        int[] retVal = new int[cardinality(mask)];
+        int j = 0;
+        for (int i = 0; i < mask.length; i++){
+            long word = mask[i];
+            while (word != 0){
+                retVal[j++] = (i << 6)+Long.numberOfTrailingZeros(word);
+                word &= word-1;
+            }
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.util.Arrays;
+
+/**
+ * Conjunction of literals on attributes of a BinaryDataset, given by the sorted literal codes
+ * 2*attributeIndex+(positive ? 1 : 0); used as a key in hash sets.
+ */
+class Conjunction {
+
+    final int[] codes;
+
+    private int hashCode;
+
+    Conjunction(int[] codes){
+        this.codes = codes;
+        this.hashCode = Arrays.hashCode(codes);
+    }
+
+    boolean covers(boolean[] row){
+        for (int code : this.codes){
+            if (row[code >>> 1] != ((code & 1) == 1)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(){
+        return this.hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o instanceof Conjunction && Arrays.equals(this.codes, ((Conjunction)o).codes);
+    }
+}
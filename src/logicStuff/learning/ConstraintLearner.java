@@ -15,57 +15,384 @@ import ida.ilp.logic.Literal;
 import ida.ilp.logic.LogicUtils;
 import ida.utils.Sugar;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Created by kuzelkao_cardiff on 01/02/17.
  */
 public class ConstraintLearner {
 
+    public final static int BEAM = 1, VERTICAL = 2;
+
+    private int mode = BEAM;
+
+    private int parallelism = 1;
+
+    private int supportCacheSize = 1 << 20;
+
+    //counts of conjunctions from the last run in the BEAM mode, shared by candidate evaluation and minimality checks
+    private SupportCache supportCache;
+
+    //subtrees rooted at conjunctions shorter than this are searched by separate fork-join tasks
+    private final static int SPLIT_DEPTH = 2;
+
+    //...but only if their tidsets contain at least this many rows, every task allocates its own maxLength+2 tidsets
+    //which is not worth it for small subtrees
+    private final static int MIN_SPLIT_ROWS = 1 << 12;
+
+    /**
+     * Creates a learner in the BEAM mode, the VERTICAL mode can be selected by the other constructor or by setMode(...).
+     */
     public ConstraintLearner(){
 
     }
 
+    public ConstraintLearner(int mode){
+        this.mode = mode;
+    }
+
     public Set<Clause> learnConstraints(BinaryDataset dataset, int maxLength){
+        if (this.mode == VERTICAL){
+            return toClauses(learnConstraintsVertically(dataset.columns(), dataset.rowMask(), maxLength), dataset.attributes());
+        }
+        this.supportCache = new SupportCache(this.supportCacheSize);
         Set<Clause> retVal = new HashSet<Clause>();
         Set<Clause> beam = new HashSet<Clause>();
         String[] attributes = dataset.attributes();
         beam.add(new Clause());
         for (int i = 0; i < attributes.length; i++){
             Set<Clause> newBeam = new HashSet<Clause>();
+            List<Clause> candidates = new ArrayList<Clause>();
             for (Clause c : beam){
-                Clause cand1 = new Clause(Sugar.union(c.literals(), new Literal(attributes[i])));
-                if (dataset.count(cand1.literals()) == 0){
-                    if (minimal(cand1, dataset)) {
-                        retVal.add(LogicUtils.flipSigns(cand1));
-                    }
-                } else if (cand1.countLiterals() < maxLength){
-                    newBeam.add(cand1);
+                candidates.add(new Clause(Sugar.union(c.literals(), new Literal(attributes[i]))));
+                candidates.add(new Clause(Sugar.union(c.literals(), new Literal(attributes[i], true))));
+                newBeam.add(c);
+            }
+            //all candidates from this level are counted in one batch
+            List<Set<Literal>> conjunctions = new ArrayList<Set<Literal>>();
+            for (Clause cand : candidates){
+                conjunctions.add(cand.literals());
+            }
+            double[] counts = this.supportCache.count(dataset, conjunctions);
+            List<Clause> zeroSupport = new ArrayList<Clause>();
+            for (int j = 0; j < counts.length; j++){
+                Clause cand = candidates.get(j);
+                if (counts[j] == 0){
+                    zeroSupport.add(cand);
+                } else if (cand.countLiterals() < maxLength){
+                    newBeam.add(cand);
+                }
+            }
+            for (Clause cand : minimal(zeroSupport, dataset)){
+                retVal.add(LogicUtils.flipSigns(cand));
+            }
+            beam = newBeam;
+        }
+        return retVal;
+    }
+
+    /**
+     * Depth-first (Eclat-style) search over conjunctions whose literals are ordered by attribute index. Every node
+     * of the search tree carries its tidset (the set of rows covered by the conjunction, stored as a bitset) which is
+     * obtained from the tidset of the parent by a single intersection. The constraints found are exactly the minimal
+     * zero-support conjunctions with at most maxLength literals, i.e. the same as in the BEAM mode.
+     *
+     * @param columns
+     * @param rows the rows of columns which form the dataset
+     * @param maxLength
+     * @return conjunctions encoded as arrays of literal codes 2*attributeIndex+(positive ? 1 : 0)
+     */
+    List<int[]> learnConstraintsVertically(ColumnStore columns, long[] rows, int maxLength){
+        if (this.parallelism > 1){
+            ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+            try {
+                return pool.invoke(new SearchTask(columns, rows, maxLength, new int[0]));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        List<int[]> retVal = new ArrayList<int[]>();
+        Node root = new Node(columns, rows, maxLength);
+        root.search(0, 0, retVal);
+        return retVal;
+    }
+
+    static Set<Clause> toClauses(List<int[]> conjunctions, String[] attributes){
+        Set<Clause> retVal = new HashSet<Clause>();
+        for (int[] conjunction : conjunctions){
+            retVal.add(toClause(conjunction, attributes));
+        }
+        return retVal;
+    }
+
+    private static Clause toClause(int[] conjunction, String[] attributes){
+        List<Literal> literals = new ArrayList<Literal>();
+        for (int code : conjunction){
+            literals.add(new Literal(attributes[code >>> 1], (code & 1) == 0));
+        }
+        return LogicUtils.flipSigns(new Clause(literals));
+    }
+
+    /**
+     * Learns the same constraints as learnConstraints(dataset, maxLength) (regardless of the mode), but level by level:
+     * all constraints with k literals are found before the ones with k+1 literals. A zero-support conjunction with k literals
+     * is minimal iff all its subsets with k-1 literals are in the previous level, so no extra counting is needed.
+     * The budget is checked after every conjunction of the beam is extended; when it is exhausted (or the next beam would
+     * exceed its maximum size), the constraints found so far are returned. This search runs in one thread (see setParallelism(...)).
+     * @param dataset
+     * @param maxLength
+     * @param budget
+     * @return
+     */
+    public LearningResult learnConstraints(BinaryDataset dataset, int maxLength, LearningBudget budget){
+        //like learnConstraints(dataset, maxLength), which always looks at single literals
+        maxLength = Math.max(maxLength, 1);
+        ColumnStore columns = dataset.columns();
+        long[] rows = dataset.rowMask();
+        long[] tidset = new long[rows.length];
+        long[] extended = new long[rows.length];
+        List<Clause> constraints = new ArrayList<Clause>();
+        //conjunctions with non-zero support from the previous level
+        Set<Conjunction> beam = new LinkedHashSet<Conjunction>();
+        if (!ColumnStore.isEmpty(rows)){
+            beam.add(new Conjunction(new int[0]));
+        }
+        for (int length = 1; length <= maxLength; length++){
+            Set<Conjunction> newBeam = new LinkedHashSet<Conjunction>();
+            for (Conjunction c : beam){
+                if (budget.exhausted()){
+                    return new LearningResult(constraints, false, length-1);
                 }
-                Clause cand2 = new Clause(Sugar.union(c.literals(), new Literal(attributes[i], true)));
-                if (dataset.count(cand2.literals()) == 0){
-                    if (minimal(cand2, dataset)) {
-                        retVal.add(LogicUtils.flipSigns(cand2));
+                System.arraycopy(rows, 0, tidset, 0, rows.length);
+                for (int code : c.codes){
+                    columns.and(tidset, code >>> 1, (code & 1) == 1);
+                }
+                int firstAttribute = c.codes.length == 0 ? 0 : (c.codes[c.codes.length-1] >>> 1)+1;
+                for (int attribute = firstAttribute; attribute < columns.numColumns(); attribute++){
+                    for (int sign = 1; sign >= 0; sign--){
+                        int[] candidate = Arrays.copyOf(c.codes, length);
+                        candidate[length-1] = 2*attribute+sign;
+                        columns.andInto(extended, tidset, attribute, sign == 1);
+                        if (ColumnStore.isEmpty(extended)){
+                            if (allSubsetsIn(candidate, beam)){
+                                constraints.add(toClause(candidate, dataset.attributes()));
+                            }
+                        } else if (length < maxLength){
+                            newBeam.add(new Conjunction(candidate));
+                            if (budget.exceedsBeamSize(newBeam.size())){
+                                return new LearningResult(constraints, false, length-1);
+                            }
+                        }
                     }
-                } else if (cand2.countLiterals() < maxLength){
-                    newBeam.add(cand2);
                 }
-                newBeam.add(c);
             }
             beam = newBeam;
         }
-        return retVal;
+        return new LearningResult(constraints, true, maxLength);
     }
 
-    //quick naive hack
-    private boolean minimal(Clause cand, BinaryDataset dataset){
-        for (Literal l : cand.literals()){
-            if (dataset.count(Sugar.collectionDifference(cand.literals(), l)) == 0){
+    //checks whether the subsets obtained by removing one literal (except the last one) are in the given set
+    private static boolean allSubsetsIn(int[] conjunction, Set<Conjunction> set){
+        for (int removed = 0; removed < conjunction.length-1; removed++){
+            int[] subset = new int[conjunction.length-1];
+            System.arraycopy(conjunction, 0, subset, 0, removed);
+            System.arraycopy(conjunction, removed+1, subset, removed, subset.length-removed);
+            if (!set.contains(new Conjunction(subset))){
                 return false;
             }
         }
         return true;
     }
 
+    //state of the depth-first search, tidsets[d] is the tidset of the conjunction literals[0..d-1]
+    private static class Node {
+
+        private ColumnStore columns;
+
+        private int maxLength;
+
+        private int[] literals;
+
+        private long[][] tidsets;
+
+        private long[] scratch;
+
+        private Node(ColumnStore columns, long[] rows, int maxLength){
+            this.columns = columns;
+            this.maxLength = maxLength;
+            int depth = Math.max(maxLength, 1);
+            this.literals = new int[depth];
+            this.tidsets = new long[depth+1][];
+            this.tidsets[0] = rows;
+            for (int d = 1; d <= depth; d++){
+                this.tidsets[d] = new long[this.tidsets[0].length];
+            }
+            this.scratch = new long[this.tidsets[0].length];
+        }
+
+        private void search(int depth, int firstAttribute, List<int[]> constraints){
+            for (int i = firstAttribute; i < this.columns.numColumns(); i++){
+                expand(depth, i, true, constraints);
+                expand(depth, i, false, constraints);
+            }
+        }
+
+        private void expand(int depth, int attribute, boolean positive, List<int[]> constraints){
+            if (push(depth, attribute, positive)){
+                if (depth+1 < this.maxLength){
+                    search(depth+1, attribute+1, constraints);
+                }
+            } else if (minimal(depth+1)){
+                constraints.add(Arrays.copyOf(this.literals, depth+1));
+            }
+        }
+
+        //sets the literal at the given depth and computes its tidset, returns false iff the tidset is empty
+        private boolean push(int depth, int attribute, boolean positive){
+            long[] tidset = this.tidsets[depth+1];
+            this.columns.andInto(tidset, this.tidsets[depth], attribute, positive);
+            this.literals[depth] = 2*attribute+(positive ? 1 : 0);
+            return !ColumnStore.isEmpty(tidset);
+        }
+
+        //the conjunction literals[0..length-1] has zero support, it is minimal if all its subsets obtained
+        //by removing one literal have non-zero support
+        private boolean minimal(int length){
+            //removing the last literal gives the parent
+            if (ColumnStore.isEmpty(this.tidsets[length-1])){
+                return false;
+            }
+            for (int removed = 0; removed < length-1; removed++){
+                this.columns.andInto(this.scratch, this.tidsets[removed], this.literals[removed+1] >>> 1, (this.literals[removed+1] & 1) == 1);
+                for (int j = removed+2; j < length; j++){
+                    this.columns.and(this.scratch, this.literals[j] >>> 1, (this.literals[j] & 1) == 1);
+                }
+                if (ColumnStore.isEmpty(this.scratch)){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public void setMode(int mode){
+        this.mode = mode;
+    }
+
+    //searches the subtree rooted at the given prefix, subtrees of short prefixes are forked as separate tasks
+    private static class SearchTask extends RecursiveTask<List<int[]>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ColumnStore columns;
+
+        private long[] rows;
+
+        private int maxLength;
+
+        private int[] prefix;
+
+        private SearchTask(ColumnStore columns, long[] rows, int maxLength, int[] prefix){
+            this.columns = columns;
+            this.rows = rows;
+            this.maxLength = maxLength;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<int[]> compute() {
+            List<int[]> retVal = new ArrayList<int[]>();
+            Node node = new Node(this.columns, this.rows, this.maxLength);
+            int depth = this.prefix.length;
+            for (int d = 0; d < depth-1; d++){
+                node.push(d, this.prefix[d] >>> 1, (this.prefix[d] & 1) == 1);
+            }
+            int firstAttribute = 0;
+            if (depth > 0){
+                int last = this.prefix[depth-1];
+                firstAttribute = (last >>> 1)+1;
+                if (!node.push(depth-1, last >>> 1, (last & 1) == 1)){
+                    if (node.minimal(depth)){
+                        retVal.add(this.prefix);
+                    }
+                    return retVal;
+                } else if (depth >= this.maxLength){
+                    return retVal;
+                }
+            }
+            if (depth < SPLIT_DEPTH && ColumnStore.cardinality(node.tidsets[depth]) >= MIN_SPLIT_ROWS){
+                List<SearchTask> subtasks = new ArrayList<SearchTask>();
+                for (int i = firstAttribute; i < this.columns.numColumns(); i++){
+                    for (int sign = 1; sign >= 0; sign--){
+                        int[] childPrefix = Arrays.copyOf(this.prefix, depth+1);
+                        childPrefix[depth] = 2*i+sign;
+                        subtasks.add(new SearchTask(this.columns, this.rows, this.maxLength, childPrefix));
+                    }
+                }
+                for (SearchTask task : invokeAll(subtasks)){
+                    retVal.addAll(task.join());
+                }
+            } else {
+                node.search(depth, firstAttribute, retVal);
+            }
+            return retVal;
+        }
+    }
+
+    public void setSupportCacheSize(int supportCacheSize){
+        this.supportCacheSize = supportCacheSize;
+    }
+
+    /**
+     *
+     * @return the support cache used in the last call of learnConstraints(...) in the BEAM mode (its hits and misses
+     * show how many calls of BinaryDataset.count were saved)
+     */
+    public SupportCache supportCache(){
+        return this.supportCache;
+    }
+
+    /**
+     * Sets the number of threads used by learnConstraints(dataset, maxLength) in the VERTICAL mode, which splits its search
+     * tree between tasks of a ForkJoinPool (the results are the same as with one thread). The BEAM mode (default) and
+     * learnConstraints(dataset, maxLength, budget) are sequential and ignore this setting, so parallel learning needs
+     * new ConstraintLearner(ConstraintLearner.VERTICAL) or setMode(ConstraintLearner.VERTICAL).
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism){
+        this.parallelism = parallelism;
+    }
+
+    //quick naive hack
+    private List<Clause> minimal(List<Clause> cands, BinaryDataset dataset){
+        List<Set<Literal>> subsets = new ArrayList<Set<Literal>>();
+        for (Clause cand : cands){
+            for (Literal l : cand.literals()){
+                subsets.add(Sugar.collectionDifference(cand.literals(), l));
+            }
+        }
+        double[] counts = this.supportCache.count(dataset, subsets);
+        List<Clause> retVal = new ArrayList<Clause>();
+        int j = 0;
+        for (Clause cand : cands){
+            boolean minimal = true;
+            for (int k = 0; k < cand.countLiterals(); k++){
+                if (counts[j++] == 0){
+                    minimal = false;
+                }
+            }
+            if (minimal){
+                retVal.add(cand);
+            }
+        }
+        return retVal;
+    }
+
 }
@@ -13,7 +13,6 @@ import ida.ilp.logic.*;
 import ida.ilp.logic.subsumption.ApproximateSubsetCounter;
 import ida.ilp.logic.subsumption.Matching;
 import ida.ilp.logic.subsumption.SpecialVarargPredicates;
-import ida.utils.Cache;
 import ida.utils.Combinatorics;
 import ida.utils.MutableDouble;
 import ida.utils.Sugar;
@@ -24,6 +23,11 @@ import logicStuff.Globals;
 import logicStuff.theories.TheorySolver;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Created by kuzelkao_cardiff on 25/01/17.
@@ -58,9 +62,35 @@ public class Dataset {
 
     private Matching matching;
 
+    //Matching is not thread-safe, so every thread gets its own instance (the thread which created the dataset uses this.matching)
+    private ThreadLocal<Matching> threadMatchings;
+
     private ApproximateSubsetCounter subsetCounter;
 
-    private Cache<Clause,Boolean> matchingCache = new Cache<Clause, Boolean>();
+    //results of matches(...) for clauses up to isomorphism (keyed by canonical forms), null if the cache is switched off (default)
+    private LRUCache<String,Boolean> matchingCache;
+
+    //number of calls of matches(...) answered without subsumption because a subclause was known not to match
+    private AtomicLong prunedByCache = new AtomicLong();
+
+    //nested random subsets of the example (in increasing order) on which matches(...) tries to find a match first,
+    //null if cascaded matching is switched off; these are independent of the subsamples used by accuracy(...)
+    private Clause[] cascade;
+
+    private ThreadLocal<Matching[]> cascadeMatchings;
+
+    //cascadeDecisions[i] is the number of calls of matches(...) decided by the i-th level of the cascade,
+    //the last element counts the ones decided by the full example
+    private AtomicLongArray cascadeDecisions = new AtomicLongArray(1);
+
+    private final static int QUERIES_PER_TASK = 64;
+
+    private int parallelism = 1;
+
+    private ForkJoinPool pool;
+
+    //coverage of queries by single rules in the subsamples, see coverage(...)
+    private LRUCache<Pair<Clause,Integer>,BitSet[]> coverageCache = new LRUCache<Pair<Clause,Integer>,BitSet[]>(1 << 12, LRUCache.CONCURRENT_STRIPES);
 
     public Dataset(Clause example){
         set(example, null, null, SUBSAMPLING_MODE);
@@ -97,6 +127,15 @@ public class Dataset {
         this.matching = new Matching(Sugar.<Clause>list(example));
         //we assume alldiff(...) constraints over all variables in rules
         this.matching.setSubsumptionMode(Matching.OI_SUBSUMPTION);
+        this.threadMatchings = new ThreadLocal<Matching>(){
+            @Override
+            protected Matching initialValue() {
+                Matching m = new Matching(Sugar.<Clause>list(Dataset.this.example));
+                m.setSubsumptionMode(Matching.OI_SUBSUMPTION);
+                return m;
+            }
+        };
+        this.threadMatchings.set(this.matching);
         this.subsetCounter = new ApproximateSubsetCounter(example, 0.5, 1);
         this.subsetCounter.setSubsumptionMode(Matching.OI_SUBSUMPTION);
         this.allPredicates = LogicUtils.predicates(this.example);
@@ -157,38 +196,25 @@ public class Dataset {
             }
             return (positiveWeight*avgPosCovered+negativeWeight*(numNegative-avgNegCovered))/(positiveWeight*numPositive+negativeWeight*numNegative);
         } else*/ if (mode == SUBSAMPLING_MODE){
+            //a query is covered in a subsample iff it is covered by at least one of the rules
+            BitSet[] covered = new BitSet[subsamples.length];
+            for (int j = 0; j < subsamples.length; j++){
+                covered[j] = new BitSet(queries.size());
+            }
+            for (HornClause rule : rules){
+                BitSet[] ruleCoverage = coverage(rule, k);
+                for (int j = 0; j < subsamples.length; j++){
+                    covered[j].or(ruleCoverage[j]);
+                }
+            }
             double avgPosCovered = 0;
             double avgNegCovered = 0;
-            for (Dataset subsample : subsamples) {
-                for (int i = 0; i < queries.size(); i++) {
-                    Literal query = queries.get(i);
-                    Boolean target = targets.get(i);
-                    List<Clause> unifiedClauses = new ArrayList<Clause>();
-                    for (HornClause rule : rules) {
-                        rule = addAlldiffConstraint(rule, k);
-                        Clause c = rule.unify(query);
-                        //System.out.println("unified: "+c);
-                        if (c != null) {
-                            unifiedClauses.add(LogicUtils.flipSigns(c));
-                        }
-                    }
-                    boolean covers = false;
-                    for (Clause unified : unifiedClauses){
-//                        if (subsample.matching.subsumption(unified, 0)){
-//                            covers = true;
-//                            break;
-//                        }
-                        if (subsample.subsumption(unified)){
-                            covers = true;
-                            break;
-                        }
-                    }
-                    if (covers) {
-                        if (target) {
-                            avgPosCovered += 1.0/subsamples.length;
-                        } else {
-                            avgNegCovered += 1.0/subsamples.length;
-                        }
+            for (int j = 0; j < subsamples.length; j++) {
+                for (int i = covered[j].nextSetBit(0); i >= 0; i = covered[j].nextSetBit(i+1)) {
+                    if (targets.get(i)) {
+                        avgPosCovered += 1.0/subsamples.length;
+                    } else {
+                        avgNegCovered += 1.0/subsamples.length;
                     }
                 }
             }
@@ -200,6 +226,160 @@ public class Dataset {
         }
     }
 
+    /**
+     * Coverage of the queries by a single rule. The rule is unified with every query only once (unification does not
+     * depend on the subsample) and the result is cached, so when rules are added to or removed from a theory,
+     * only the coverage of the changed rules needs to be computed.
+     * @param rule
+     * @param k
+     * @return for every subsample, the bitset of the queries covered by the rule in that subsample
+     */
+    private BitSet[] coverage(HornClause rule, int k){
+        Pair<Clause,Integer> key = new Pair<Clause,Integer>(rule.toClause(), k);
+        BitSet[] retVal = this.coverageCache.get(key);
+        if (retVal == null){
+            HornClause withAlldiff = addAlldiffConstraint(rule, k);
+            boolean[][] covered = new boolean[subsamples.length][queries.size()];
+            if (this.parallelism > 1){
+                this.pool().invoke(new CoverageTask(withAlldiff, 0, queries.size(), covered));
+            } else {
+                coverage(withAlldiff, 0, queries.size(), covered);
+            }
+            retVal = new BitSet[subsamples.length];
+            for (int j = 0; j < subsamples.length; j++){
+                retVal[j] = new BitSet(queries.size());
+                for (int i = 0; i < queries.size(); i++){
+                    if (covered[j][i]){
+                        retVal[j].set(i);
+                    }
+                }
+            }
+            this.coverageCache.put(key, retVal);
+        }
+        return retVal;
+    }
+
+    private void coverage(HornClause withAlldiff, int from, int to, boolean[][] covered){
+        for (int i = from; i < to; i++){
+            Clause c = withAlldiff.unify(queries.get(i));
+            if (c != null){
+                Clause unified = LogicUtils.flipSigns(c);
+                for (int j = 0; j < subsamples.length; j++){
+                    covered[j][i] = subsamples[j].subsumption(unified);
+                }
+            }
+        }
+    }
+
+    private ForkJoinPool pool(){
+        synchronized (this){
+            if (this.pool == null){
+                this.pool = new ForkJoinPool(this.parallelism);
+            }
+            return this.pool;
+        }
+    }
+
+    /**
+     * Sets the number of threads used for checking the queries in accuracy(...) and numPositiveMatchedExistentially(...),
+     * the results are the same as with one thread. Every thread uses its own Matching objects.
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism){
+        synchronized (this){
+            this.close();
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Shuts down the threads used for checking queries in parallel (see setParallelism(...)). The dataset can still be used
+     * afterwards, a new pool is created when it is needed.
+     */
+    public void close(){
+        synchronized (this){
+            if (this.pool != null){
+                this.pool.shutdown();
+                this.pool = null;
+            }
+        }
+    }
+
+    //checks the queries from, ..., to-1, splitting the range among threads
+    private class CoverageTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private HornClause withAlldiff;
+
+        private int from, to;
+
+        private boolean[][] covered;
+
+        private CoverageTask(HornClause withAlldiff, int from, int to, boolean[][] covered){
+            this.withAlldiff = withAlldiff;
+            this.from = from;
+            this.to = to;
+            this.covered = covered;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to-this.from <= QUERIES_PER_TASK){
+                coverage(this.withAlldiff, this.from, this.to, this.covered);
+            } else {
+                int middle = (this.from+this.to) >>> 1;
+                invokeAll(new CoverageTask(this.withAlldiff, this.from, middle, this.covered),
+                        new CoverageTask(this.withAlldiff, middle, this.to, this.covered));
+            }
+        }
+    }
+
+    private class PositiveMatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private HornClause rule;
+
+        private int from, to, maxNum;
+
+        private AtomicInteger matched;
+
+        private PositiveMatchTask(HornClause rule, int from, int to, int maxNum, AtomicInteger matched){
+            this.rule = rule;
+            this.from = from;
+            this.to = to;
+            this.maxNum = maxNum;
+            this.matched = matched;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to-this.from <= QUERIES_PER_TASK){
+                for (int i = this.from; i < this.to && this.matched.get() < this.maxNum; i++){
+                    if (targets.get(i)) {
+                        Clause c = this.rule.unify(queries.get(i));
+                        if (c != null && subsumption(LogicUtils.flipSigns(c))) {
+                            this.matched.incrementAndGet();
+                        }
+                    }
+                }
+            } else if (this.matched.get() < this.maxNum){
+                int middle = (this.from+this.to) >>> 1;
+                invokeAll(new PositiveMatchTask(this.rule, this.from, middle, this.maxNum, this.matched),
+                        new PositiveMatchTask(this.rule, middle, this.to, this.maxNum, this.matched));
+            }
+        }
+    }
+
+    /**
+     *
+     * @param maxSize maximum number of rules whose coverage is cached by accuracy(...)
+     */
+    public void setCoverageCacheSize(int maxSize){
+        this.coverageCache = new LRUCache<Pair<Clause,Integer>,BitSet[]>(maxSize, LRUCache.CONCURRENT_STRIPES);
+    }
+
     private boolean subsumption(Clause unified){
         if (unified == null) {
             return false;
@@ -225,7 +405,7 @@ public class Dataset {
 //        boolean result = this.matching.subsumption(unified, 0);
 //        this.matchingCache.put(unified, result);
 //        return result;
-        return this.matching.subsumption(unified, 0);
+        return this.threadMatchings.get().subsumption(unified, 0);
     }
 
     private HornClause addAlldiffConstraint(HornClause hc, int k){
@@ -261,6 +441,13 @@ public class Dataset {
     public int numPositiveMatchedExistentially(HornClause rule, int k, int maxNum) {
         int retVal = 0;
         rule = addAlldiffConstraint(rule, k);
+        if (this.parallelism > 1 && maxNum > 0){
+            //the queries are checked in parallel until maxNum matches are found, if they are found,
+            //the sequential loop would return exactly maxNum, otherwise all queries are checked
+            AtomicInteger matched = new AtomicInteger();
+            this.pool().invoke(new PositiveMatchTask(rule, 0, queries.size(), maxNum, matched));
+            return Math.min(matched.get(), maxNum);
+        }
         for (int i = 0; i < queries.size(); i++){
             if (targets.get(i)) {
                 Literal query = queries.get(i);
@@ -278,8 +465,117 @@ public class Dataset {
         return retVal;
     }
 
+    /**
+     * Can be called concurrently from several threads, each of them uses its own Matching object.
+     *
+     * If the cache is switched on (see setMatchingCacheSize(...)), the results are cached up to isomorphism of the clauses.
+     * Matching is anti-monotone, so if a clause obtained by removing one literal is known not to match (e.g. from the
+     * previous level of a beam search), the clause does not match either and no subsumption check is needed.
+     * @param clause
+     * @return
+     */
     public boolean matches(Clause clause) {
-        return this.matching.subsumption(clause, 0);
+        if (this.matchingCache == null){
+            return cascadedSubsumption(clause);
+        }
+        String key = CanonicalClause.canonicalForm(clause);
+        Boolean cached = this.matchingCache.get(key);
+        if (cached != null){
+            return cached;
+        }
+        if (clause.countLiterals() > 1) {
+            for (Literal l : clause.literals()) {
+                Boolean covered = this.matchingCache.get(CanonicalClause.canonicalForm(new Clause(Sugar.collectionDifference(clause.literals(), l))));
+                if (covered != null && !covered) {
+                    this.matchingCache.put(key, Boolean.FALSE);
+                    this.prunedByCache.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+        boolean retVal = cascadedSubsumption(clause);
+        this.matchingCache.put(key, retVal);
+        return retVal;
+    }
+
+    //a match on a subset of the example is also a match on the example, so the (cheaper) subsets are tried first
+    private boolean cascadedSubsumption(Clause clause){
+        if (this.cascade != null){
+            Matching[] matchings = this.cascadeMatchings.get();
+            for (int i = 0; i < matchings.length; i++){
+                if (matchings[i].subsumption(clause, 0)){
+                    this.cascadeDecisions.incrementAndGet(i);
+                    return true;
+                }
+            }
+        }
+        this.cascadeDecisions.incrementAndGet(this.cascadeDecisions.length()-1);
+        return this.threadMatchings.get().subsumption(clause, 0);
+    }
+
+    /**
+     * Switches on cascaded matching in matches(...): the clause is first matched against nested random subsets of
+     * the example with the given sizes (fractions of the number of literals of the example, in increasing order) and
+     * only if it does not match any of them, it is matched against the full example.
+     * @param fractions the sizes of the subsets, no fractions switch the cascade off
+     */
+    public void setCascade(double... fractions){
+        this.cascadeDecisions = new AtomicLongArray(fractions.length+1);
+        if (fractions.length == 0){
+            this.cascade = null;
+            this.cascadeMatchings = null;
+            return;
+        }
+        final Clause[] cascade = new Clause[fractions.length];
+        Clause previous = this.example;
+        for (int i = fractions.length-1; i >= 0; i--){
+            int num = (int)(this.example.countLiterals()*fractions[i]);
+            cascade[i] = new Clause(Combinatorics.randomCombination(Sugar.listFromCollections(previous.literals()), num).toList());
+            previous = cascade[i];
+        }
+        this.cascadeMatchings = new ThreadLocal<Matching[]>(){
+            @Override
+            protected Matching[] initialValue() {
+                Matching[] matchings = new Matching[cascade.length];
+                for (int i = 0; i < cascade.length; i++){
+                    matchings[i] = new Matching(Sugar.<Clause>list(cascade[i]));
+                    matchings[i].setSubsumptionMode(Matching.OI_SUBSUMPTION);
+                }
+                return matchings;
+            }
+        };
+        this.cascade = cascade;
+    }
+
+    /**
+     *
+     * @return numbers of calls of matches(...) decided by the individual levels of the cascade (the last element
+     * corresponds to the full example)
+     */
+    public long[] cascadeDecisions(){
+        long[] retVal = new long[this.cascadeDecisions.length()];
+        for (int i = 0; i < retVal.length; i++){
+            retVal[i] = this.cascadeDecisions.get(i);
+        }
+        return retVal;
+    }
+
+    /**
+     *
+     * The cache is off by default: every uncached call of matches(...) then computes the canonical forms of the clause and
+     * of all its subclauses with one literal less, which is cheap only for short clauses with few variables (see CanonicalClause).
+     * @param maxSize maximum number of clauses whose results of matches(...) are cached, 0 switches the cache off
+     */
+    public void setMatchingCacheSize(int maxSize){
+        this.matchingCache = maxSize > 0 ? new LRUCache<String,Boolean>(maxSize, LRUCache.CONCURRENT_STRIPES) : null;
+    }
+
+    public LRUCache<String,Boolean> matchingCache(){
+        return this.matchingCache;
+    }
+
+    public long prunedByCache(){
+        return this.prunedByCache.get();
     }
 
     public void addQueryPredicate(String predicateName, int arity){
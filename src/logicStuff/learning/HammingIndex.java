@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.util.Arrays;
+
+/**
+ * Index for finding the examples of a BinaryDataset which are within a small Hamming distance from a given vector
+ * (multi-index hashing). The attributes are split into numChunks chunks of at most 64 attributes and the examples are
+ * indexed by the values of each chunk. If two vectors are within distance r, then at least one of their chunks
+ * differs in at most r/numChunks bits, so only the examples which agree with the query vector (up to r/numChunks bits)
+ * on some chunk need to be checked. With numChunks >= r+1, this means exact matches of chunks.
+ *
+ * The index refers to the examples by their indices, so it must be rebuilt when the order of the examples changes.
+ */
+public class HammingIndex {
+
+    private int numExamples;
+
+    private int numAttributes;
+
+    private int numChunks;
+
+    //chunk c consists of attributes chunkStarts[c], ..., chunkStarts[c+1]-1
+    private int[] chunkStarts;
+
+    private int words;
+
+    //packed examples, example i occupies packed[i*words], ..., packed[(i+1)*words-1]
+    private long[] packed;
+
+    //values of the chunks, example i occupies keys[i*numChunks], ..., keys[(i+1)*numChunks-1]
+    private long[] keys;
+
+    //for every chunk: the distinct values (sorted) and, for the j-th of them, the examples
+    //examples[c][offsets[c][j]], ..., examples[c][offsets[c][j+1]-1] having this value (in increasing order)
+    private long[][] distinctKeys;
+
+    private int[][] offsets;
+
+    private int[][] examples;
+
+    /**
+     *
+     * @param dataset
+     * @param maxRadius the largest radius for which queries are expected to be fast (queries with larger
+     *                  radii are still answered correctly)
+     */
+    public HammingIndex(BinaryDataset dataset, int maxRadius){
+        this.numExamples = dataset.numExamples();
+        this.numAttributes = dataset.attributes().length;
+        this.numChunks = Math.max(maxRadius+1, (this.numAttributes+63) >>> 6);
+        this.numChunks = Math.max(1, Math.min(this.numChunks, this.numAttributes));
+        this.chunkStarts = new int[this.numChunks+1];
+        for (int c = 0; c <= this.numChunks; c++){
+            this.chunkStarts[c] = (int)((long)c*this.numAttributes/this.numChunks);
+        }
+        this.words = ColumnStore.numWords(this.numAttributes);
+        this.packed = new long[this.numExamples*this.words];
+        this.keys = new long[this.numExamples*this.numChunks];
+        long[] row = new long[this.words];
+        long[] rowKeys = new long[this.numChunks];
+        for (int i = 0; i < this.numExamples; i++){
+            pack(dataset.example(i), row, rowKeys);
+            System.arraycopy(row, 0, this.packed, i*this.words, this.words);
+            System.arraycopy(rowKeys, 0, this.keys, i*this.numChunks, this.numChunks);
+        }
+        this.distinctKeys = new long[this.numChunks][];
+        this.offsets = new int[this.numChunks][];
+        this.examples = new int[this.numChunks][];
+        for (int c = 0; c < this.numChunks; c++){
+            buildTable(c);
+        }
+    }
+
+    private void buildTable(int chunk){
+        long[] sorted = new long[this.numExamples];
+        for (int i = 0; i < this.numExamples; i++){
+            sorted[i] = this.keys[i*this.numChunks+chunk];
+        }
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++){
+            if (i == 0 || sorted[i] != sorted[i-1]){
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        long[] distinctKeys = Arrays.copyOf(sorted, distinct);
+        int[] offsets = new int[distinct+1];
+        int[] bucket = new int[this.numExamples];
+        for (int i = 0; i < this.numExamples; i++){
+            bucket[i] = Arrays.binarySearch(distinctKeys, this.keys[i*this.numChunks+chunk]);
+            offsets[bucket[i]+1]++;
+        }
+        for (int j = 0; j < distinct; j++){
+            offsets[j+1] += offsets[j];
+        }
+        int[] next = Arrays.copyOf(offsets, distinct);
+        int[] examples = new int[this.numExamples];
+        for (int i = 0; i < this.numExamples; i++){
+            examples[next[bucket[i]]++] = i;
+        }
+        this.distinctKeys[chunk] = distinctKeys;
+        this.offsets[chunk] = offsets;
+        this.examples[chunk] = examples;
+    }
+
+    private void pack(boolean[] vector, long[] row, long[] rowKeys){
+        if (vector.length != this.numAttributes){
+            throw new IllegalArgumentException("Expected a vector of length "+this.numAttributes+", got "+vector.length);
+        }
+        Arrays.fill(row, 0);
+        for (int j = 0; j < vector.length; j++){
+            if (vector[j]){
+                row[j >>> 6] |= 1L << j;
+            }
+        }
+        for (int c = 0; c < this.numChunks; c++){
+            long key = 0;
+            for (int j = this.chunkStarts[c]; j < this.chunkStarts[c+1]; j++){
+                if (vector[j]){
+                    key |= 1L << (j-this.chunkStarts[c]);
+                }
+            }
+            rowKeys[c] = key;
+        }
+    }
+
+    /**
+     *
+     * @param center
+     * @param radius
+     * @return indices (in increasing order) of the examples whose Hamming distance from center is at most radius
+     */
+    public int[] query(boolean[] center, int radius){
+        long[] row = new long[this.words];
+        long[] rowKeys = new long[this.numChunks];
+        pack(center, row, rowKeys);
+        int chunkRadius = radius/this.numChunks;
+        int[] retVal = new int[16];
+        int num = 0;
+        long numProbes = 0;
+        for (int c = 0; c < this.numChunks; c++){
+            int chunkLength = this.chunkStarts[c+1]-this.chunkStarts[c];
+            numProbes += numProbes(chunkLength, Math.min(chunkRadius, chunkLength), this.numExamples);
+        }
+        if (numProbes >= this.numExamples){
+            //radius too large for this index, scanning is cheaper
+            for (int example = 0; example < this.numExamples; example++){
+                if (distance(example, row) <= radius){
+                    if (num == retVal.length){
+                        retVal = Arrays.copyOf(retVal, 2*num);
+                    }
+                    retVal[num++] = example;
+                }
+            }
+            return Arrays.copyOf(retVal, num);
+        }
+        for (int c = 0; c < this.numChunks; c++){
+            int chunkLength = this.chunkStarts[c+1]-this.chunkStarts[c];
+            long[] probes = probes(rowKeys[c], chunkLength, Math.min(chunkRadius, chunkLength));
+            for (long probe : probes){
+                int j = Arrays.binarySearch(this.distinctKeys[c], probe);
+                if (j < 0){
+                    continue;
+                }
+                for (int k = this.offsets[c][j]; k < this.offsets[c][j+1]; k++){
+                    int example = this.examples[c][k];
+                    if (firstMatchingChunk(example, rowKeys, chunkRadius) == c && distance(example, row) <= radius){
+                        if (num == retVal.length){
+                            retVal = Arrays.copyOf(retVal, 2*num);
+                        }
+                        retVal[num++] = example;
+                    }
+                }
+            }
+        }
+        retVal = Arrays.copyOf(retVal, num);
+        Arrays.sort(retVal);
+        return retVal;
+    }
+
+    //every example within the radius is found in the first chunk in which it is within chunkRadius from the query,
+    //the other chunks must not report it again
+    private int firstMatchingChunk(int example, long[] rowKeys, int chunkRadius){
+        int offset = example*this.numChunks;
+        for (int c = 0; c < this.numChunks; c++){
+            if (Long.bitCount(this.keys[offset+c] ^ rowKeys[c]) <= chunkRadius){
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private int distance(int example, long[] row){
+        int offset = example*this.words;
+        int retVal = 0;
+        for (int w = 0; w < this.words; w++){
+            retVal += Long.bitCount(this.packed[offset+w] ^ row[w]);
+        }
+        return retVal;
+    }
+
+    //number of values of a chunk of the given length within the given distance from a value (at most limit)
+    private static long numProbes(int length, int distance, long limit){
+        long num = 0;
+        long binomial = 1;
+        for (int d = 0; d <= distance && num < limit; d++){
+            num += binomial;
+            binomial = binomial*(length-d)/(d+1);
+        }
+        return Math.min(num, limit);
+    }
+
+    //all values of a chunk of the given length within the given distance from key
+    private static long[] probes(long key, int length, int distance){
+        long[] retVal = new long[(int)numProbes(length, distance, Integer.MAX_VALUE)];
+        probes(key, length, distance, 0, retVal, new int[]{0});
+        return retVal;
+    }
+
+    private static void probes(long key, int length, int distance, int from, long[] retVal, int[] num){
+        retVal[num[0]++] = key;
+        if (distance > 0){
+            for (int j = from; j < length; j++){
+                probes(key ^ (1L << j), length, distance-1, j+1, retVal, num);
+            }
+        }
+    }
+
+    public int numExamples(){
+        return this.numExamples;
+    }
+
+    public int numChunks(){
+        return this.numChunks;
+    }
+}
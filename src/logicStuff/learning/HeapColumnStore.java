@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+/**
+ * ColumnStore keeping the bitsets of the columns on the heap.
+ */
+public class HeapColumnStore extends ColumnStore {
+
+    private long[][] columns;
+
+    private int numRows;
+
+    public HeapColumnStore(long[][] columns, int numRows){
+        this.columns = columns;
+        this.numRows = numRows;
+    }
+
+    public static HeapColumnStore fromRows(boolean[][] rows, int numColumns){
+        int numWords = numWords(rows.length);
+        long[][] columns = new long[numColumns][numWords];
+        for (int i = 0; i < rows.length; i++){
+            boolean[] row = rows[i];
+            int wordIndex = i >>> 6;
+            long bit = 1L << i;
+            for (int j = 0; j < numColumns; j++){
+                if (row[j]){
+                    columns[j][wordIndex] |= bit;
+                }
+            }
+        }
+        return new HeapColumnStore(columns, rows.length);
+    }
+
+    @Override
+    public int numRows() {
+        return this.numRows;
+    }
+
+    @Override
+    public int numColumns() {
+        return this.columns.length;
+    }
+
+    @Override
+    public long word(int column, int wordIndex) {
+        return this.columns[column][wordIndex];
+    }
+
+    public long[] column(int column){
+        return this.columns[column];
+    }
+
+    @Override
+    public void and(long[] mask, int column, boolean positive){
+        BitKernels.get().and(mask, this.columns[column], positive);
+    }
+
+    @Override
+    public void andInto(long[] target, long[] source, int column, boolean positive){
+        BitKernels.get().andInto(target, source, this.columns[column], positive);
+    }
+
+    @Override
+    public void or(long[] mask, int column, boolean positive){
+        BitKernels.get().or(mask, this.columns[column], positive);
+        if (!positive){
+            clearTail(mask);
+        }
+    }
+
+}
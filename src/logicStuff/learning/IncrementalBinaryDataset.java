@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import ida.ilp.logic.Literal;
+
+import java.util.*;
+
+/**
+ * Binary dataset to which rows can be appended and from which they can be retracted. The rows are stored
+ * in segments of columns (as in SegmentedColumnStore) which are allocated as the dataset grows and released when
+ * all their rows have been retracted, so neither appending nor retracting copies the data.
+ *
+ * The numbers of rows in which the individual attributes are true are maintained incrementally, and so are the supports
+ * of the conjunctions registered by track(...), so querying them does not need a scan over the rows. A sliding window
+ * can be set by setWindowSize(...), then only the given number of most recently appended rows is kept.
+ *
+ * Rows are identified by the ids returned by append(...) (0, 1, 2, ... in the order of appending).
+ */
+public class IncrementalBinaryDataset {
+
+    private String[] attributeNames;
+
+    private HashMap<String,Integer> attributesToIndices = new HashMap<String,Integer>();
+
+    private int segmentWords = 64;
+
+    private int segmentShift = 6+6;
+
+    private List<long[][]> segments = new ArrayList<long[][]>();
+
+    //bitsets of the rows of the segments which have not been retracted
+    private List<long[]> live = new ArrayList<long[]>();
+
+    //id of the first row of the first segment
+    private long firstRow;
+
+    private long nextRow;
+
+    private int numExamples;
+
+    private int windowSize = Integer.MAX_VALUE;
+
+    private int[] attributeCounts;
+
+    private Map<Set<Literal>,TrackedConjunction> tracked = new HashMap<Set<Literal>,TrackedConjunction>();
+
+    public IncrementalBinaryDataset(String[] attributeNames){
+        this.attributeNames = attributeNames;
+        for (int i = 0; i < attributeNames.length; i++){
+            this.attributesToIndices.put(attributeNames[i], i);
+        }
+        this.attributeCounts = new int[attributeNames.length];
+    }
+
+    /**
+     *
+     * @param attributeNames
+     * @param segmentWords number of 64-row words of one segment, must be a power of two
+     */
+    public IncrementalBinaryDataset(String[] attributeNames, int segmentWords){
+        this(attributeNames);
+        if (Integer.bitCount(segmentWords) != 1){
+            throw new IllegalArgumentException("The number of words in a segment must be a power of two.");
+        }
+        this.segmentWords = segmentWords;
+        this.segmentShift = 6+Integer.numberOfTrailingZeros(segmentWords);
+    }
+
+    public String[] attributes(){
+        return this.attributeNames;
+    }
+
+    /**
+     *
+     * @return number of rows which have been appended and not retracted
+     */
+    public int numExamples(){
+        return this.numExamples;
+    }
+
+    /**
+     * Appends a row, if a sliding window is set, the oldest rows are retracted so that the window is not exceeded.
+     * @param row
+     * @return id of the new row
+     */
+    public long append(boolean[] row){
+        if (row.length != this.attributeNames.length){
+            throw new IllegalArgumentException("Expected a row of length "+this.attributeNames.length+", got "+row.length);
+        }
+        int position = (int)(this.nextRow-this.firstRow);
+        int segmentIndex = position >>> this.segmentShift;
+        if (segmentIndex == this.segments.size()){
+            this.segments.add(new long[this.attributeNames.length][this.segmentWords]);
+            this.live.add(new long[this.segmentWords]);
+        }
+        long[][] segment = this.segments.get(segmentIndex);
+        int wordIndex = (position >>> 6) & (this.segmentWords-1);
+        long bit = 1L << position;
+        for (int j = 0; j < row.length; j++){
+            if (row[j]){
+                segment[j][wordIndex] |= bit;
+                this.attributeCounts[j]++;
+            }
+        }
+        this.live.get(segmentIndex)[wordIndex] |= bit;
+        this.numExamples++;
+        for (TrackedConjunction t : this.tracked.values()){
+            if (t.covers(row)){
+                t.support++;
+            }
+        }
+        long id = this.nextRow++;
+        if (id-this.windowSize >= this.firstRow){
+            retract(id-this.windowSize);
+        }
+        return id;
+    }
+
+    public void append(boolean[][] rows){
+        for (boolean[] row : rows){
+            append(row);
+        }
+    }
+
+    /**
+     * Retracts the row with the given id.
+     * @param rowId
+     * @return true if the row was present (i.e. it was appended and has not been retracted yet)
+     */
+    public boolean retract(long rowId){
+        if (rowId < this.firstRow || rowId >= this.nextRow){
+            return false;
+        }
+        int position = (int)(rowId-this.firstRow);
+        int segmentIndex = position >>> this.segmentShift;
+        int wordIndex = (position >>> 6) & (this.segmentWords-1);
+        long bit = 1L << position;
+        long[] liveWords = this.live.get(segmentIndex);
+        if ((liveWords[wordIndex] & bit) == 0){
+            return false;
+        }
+        liveWords[wordIndex] &= ~bit;
+        this.numExamples--;
+        long[][] segment = this.segments.get(segmentIndex);
+        boolean[] row = new boolean[this.attributeNames.length];
+        for (int j = 0; j < row.length; j++){
+            if ((segment[j][wordIndex] & bit) != 0){
+                row[j] = true;
+                this.attributeCounts[j]--;
+            }
+        }
+        for (TrackedConjunction t : this.tracked.values()){
+            if (t.covers(row)){
+                t.support--;
+            }
+        }
+        releaseSegments();
+        return true;
+    }
+
+    //releases full segments at the beginning which contain only retracted rows
+    private void releaseSegments(){
+        long segmentRows = (long)this.segmentWords << 6;
+        while (!this.segments.isEmpty() && this.nextRow-this.firstRow >= segmentRows && ColumnStore.isEmpty(this.live.get(0))){
+            this.segments.remove(0);
+            this.live.remove(0);
+            this.firstRow += segmentRows;
+        }
+    }
+
+    /**
+     * Keeps only the given number of most recently appended rows, older rows are retracted (also the ones appended later).
+     * @param windowSize
+     */
+    public void setWindowSize(int windowSize){
+        this.windowSize = windowSize;
+        for (long old = this.firstRow; old < this.nextRow-windowSize; old++){
+            retract(old);
+        }
+    }
+
+    /**
+     *
+     * @param attribute
+     * @return number of the present rows in which the attribute is true
+     */
+    public int count(String attribute){
+        return this.attributeCounts[this.attributesToIndices.get(attribute)];
+    }
+
+    /**
+     * Starts maintaining the support of the given conjunction, it is then updated whenever a row is appended or retracted.
+     * @param conjunction
+     */
+    public void track(Set<Literal> conjunction){
+        if (!this.tracked.containsKey(conjunction)){
+            TrackedConjunction t = new TrackedConjunction(conjunction);
+            t.support = (int)scan(t);
+            this.tracked.put(new HashSet<Literal>(conjunction), t);
+        }
+    }
+
+    public void untrack(Set<Literal> conjunction){
+        this.tracked.remove(conjunction);
+    }
+
+    public Set<Set<Literal>> trackedConjunctions(){
+        return Collections.unmodifiableSet(this.tracked.keySet());
+    }
+
+    /**
+     *
+     * @param conjunction
+     * @return number of the present rows which satisfy the conjunction, it is read from the maintained value if
+     * the conjunction is tracked, otherwise it is computed from the columns
+     */
+    public int count(Set<Literal> conjunction){
+        TrackedConjunction t = this.tracked.get(conjunction);
+        if (t != null){
+            return t.support;
+        }
+        return (int)scan(new TrackedConjunction(conjunction));
+    }
+
+    private long scan(TrackedConjunction t){
+        if (this.numExamples == 0){
+            return 0;
+        }
+        ColumnStore columns = this.columns();
+        long[] mask = this.liveMask(columns);
+        for (int i = 0; i < t.attributes.length; i++){
+            columns.and(mask, t.attributes[i], t.positive[i]);
+        }
+        return ColumnStore.cardinality(mask);
+    }
+
+    private ColumnStore columns(){
+        return new SegmentedColumnStore(this.segments, this.segmentWords, this.attributeNames.length, (int)(this.nextRow-this.firstRow));
+    }
+
+    private long[] liveMask(ColumnStore columns){
+        long[] mask = columns.noRows();
+        for (int s = 0, offset = 0; offset < mask.length; s++, offset += this.segmentWords){
+            System.arraycopy(this.live.get(s), 0, mask, offset, Math.min(this.segmentWords, mask.length-offset));
+        }
+        return mask;
+    }
+
+    /**
+     *
+     * @return BinaryDataset consisting of the present rows (in the order of appending); it shares the segments with
+     * this dataset and it is not affected by later appends or retractions
+     */
+    public BinaryDataset toBinaryDataset(){
+        ColumnStore columns = this.columns();
+        return new BinaryDataset(columns, this.attributeNames, null).view(this.liveMask(columns));
+    }
+
+    private class TrackedConjunction {
+
+        private int[] attributes;
+
+        private boolean[] positive;
+
+        private int support;
+
+        private TrackedConjunction(Set<Literal> conjunction){
+            this.attributes = new int[conjunction.size()];
+            this.positive = new boolean[conjunction.size()];
+            int i = 0;
+            for (Literal l : conjunction){
+                this.attributes[i] = attributesToIndices.get(l.predicate());
+                this.positive[i] = !l.isNegated();
+                i++;
+            }
+        }
+
+        private boolean covers(boolean[] row){
+            for (int i = 0; i < this.attributes.length; i++){
+                if (row[this.attributes[i]] != this.positive[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
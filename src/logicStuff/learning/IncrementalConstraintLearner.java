@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import ida.ilp.logic.Clause;
+
+import java.util.*;
+
+/**
+ * Maintains the constraints which ConstraintLearner would learn (i.e. the minimal zero-support conjunctions of at most
+ * maxLength literals, returned as clauses) while rows are appended to the dataset.
+ *
+ * Appending rows can only increase supports, so a constraint stays valid unless one of the new rows satisfies it.
+ * Moreover, a conjunction can become a new minimal zero-support conjunction only if some of its proper subsets lost
+ * zero support, i.e. only if it is a superset of a violated constraint. So after each batch, only the violated
+ * constraints are removed and only their supersets are searched for new constraints.
+ *
+ * Retracting rows (including the ones dropped by a sliding window) can create constraints anywhere, so then the
+ * constraints are learned again from scratch when they are needed next time.
+ */
+public class IncrementalConstraintLearner {
+
+    private IncrementalBinaryDataset dataset;
+
+    private int maxLength;
+
+    //constraints as conjunctions of literal codes 2*attributeIndex+(positive ? 1 : 0), sorted
+    private Set<Conjunction> constraints = new HashSet<Conjunction>();
+
+    //true if rows were retracted since the constraints were computed
+    private boolean relearn = false;
+
+    private long numRelearns, numViolated;
+
+    public IncrementalConstraintLearner(String[] attributes, int maxLength){
+        this.dataset = new IncrementalBinaryDataset(attributes);
+        this.maxLength = maxLength;
+    }
+
+    public IncrementalConstraintLearner(BinaryDataset initial, int maxLength){
+        this(initial.attributes(), maxLength);
+        this.append(initial.examples());
+    }
+
+    public void append(boolean[] row){
+        this.append(new boolean[][]{row});
+    }
+
+    /**
+     * Appends the rows and updates the constraints.
+     * @param rows
+     */
+    public void append(boolean[][] rows){
+        int before = this.dataset.numExamples();
+        this.dataset.append(rows);
+        if (this.dataset.numExamples() != before+rows.length){
+            //some rows were dropped by the sliding window
+            this.relearn = true;
+        }
+        if (this.relearn || rows.length == 0){
+            return;
+        }
+        if (before == 0){
+            //the empty conjunction was the only constraint, everything is new
+            this.relearn = true;
+            return;
+        }
+        List<Conjunction> violated = new ArrayList<Conjunction>();
+        for (Iterator<Conjunction> it = this.constraints.iterator(); it.hasNext();){
+            Conjunction c = it.next();
+            for (boolean[] row : rows){
+                if (c.covers(row)){
+                    violated.add(c);
+                    it.remove();
+                    break;
+                }
+            }
+        }
+        this.numViolated += violated.size();
+        if (violated.isEmpty()){
+            return;
+        }
+        BinaryDataset snapshot = this.dataset.toBinaryDataset();
+        Specializer specializer = new Specializer(snapshot.columns(), snapshot.rowMask(), this.maxLength);
+        for (Conjunction c : violated){
+            specializer.specialize(c.codes, this.constraints);
+        }
+    }
+
+    /**
+     * Retracts the row with the given id (rows get ids 0, 1, 2, ... in the order in which they are appended).
+     * @param rowId
+     * @return true if the row was present
+     */
+    public boolean retract(long rowId){
+        boolean retVal = this.dataset.retract(rowId);
+        if (retVal){
+            this.relearn = true;
+        }
+        return retVal;
+    }
+
+    public void setWindowSize(int windowSize){
+        int before = this.dataset.numExamples();
+        this.dataset.setWindowSize(windowSize);
+        if (this.dataset.numExamples() != before){
+            this.relearn = true;
+        }
+    }
+
+    /**
+     *
+     * @return the same constraints as new ConstraintLearner().learnConstraints(dataset().toBinaryDataset(), maxLength)
+     */
+    public Set<Clause> constraints(){
+        if (this.relearn){
+            BinaryDataset snapshot = this.dataset.toBinaryDataset();
+            this.constraints.clear();
+            for (int[] codes : new ConstraintLearner().learnConstraintsVertically(snapshot.columns(), snapshot.rowMask(), this.maxLength)){
+                this.constraints.add(new Conjunction(codes));
+            }
+            this.relearn = false;
+            this.numRelearns++;
+        }
+        List<int[]> codes = new ArrayList<int[]>();
+        for (Conjunction c : this.constraints){
+            codes.add(c.codes);
+        }
+        return ConstraintLearner.toClauses(codes, this.dataset.attributes());
+    }
+
+    public IncrementalBinaryDataset dataset(){
+        return this.dataset;
+    }
+
+    //number of times the constraints had to be learned from scratch
+    public long numRelearns(){
+        return this.numRelearns;
+    }
+
+    //number of constraints which were invalidated by appended rows
+    public long numViolated(){
+        return this.numViolated;
+    }
+
+    //searches the supersets of a violated constraint for minimal zero-support conjunctions
+    private static class Specializer {
+
+        private ColumnStore columns;
+
+        private long[] rows;
+
+        private int maxLength;
+
+        private long[][] tidsets;
+
+        private long[] scratch;
+
+        private Specializer(ColumnStore columns, long[] rows, int maxLength){
+            this.columns = columns;
+            this.rows = rows;
+            this.maxLength = maxLength;
+            this.tidsets = new long[maxLength+1][rows.length];
+            this.scratch = new long[rows.length];
+        }
+
+        private void specialize(int[] violated, Set<Conjunction> constraints){
+            if (violated.length >= this.maxLength){
+                return;
+            }
+            boolean[] used = new boolean[this.columns.numColumns()];
+            System.arraycopy(this.rows, 0, this.tidsets[0], 0, this.rows.length);
+            for (int code : violated){
+                used[code >>> 1] = true;
+                this.columns.and(this.tidsets[0], code >>> 1, (code & 1) == 1);
+            }
+            search(violated, used, 0, 0, new int[this.maxLength-violated.length], constraints);
+        }
+
+        //tidsets[depth] is the tidset of violated plus extension[0..depth-1]
+        private void search(int[] violated, boolean[] used, int depth, int firstAttribute, int[] extension, Set<Conjunction> constraints){
+            for (int attribute = firstAttribute; attribute < used.length; attribute++){
+                if (used[attribute]){
+                    continue;
+                }
+                for (int sign = 1; sign >= 0; sign--){
+                    this.columns.andInto(this.tidsets[depth+1], this.tidsets[depth], attribute, sign == 1);
+                    extension[depth] = 2*attribute+sign;
+                    if (!ColumnStore.isEmpty(this.tidsets[depth+1])){
+                        if (depth+1 < extension.length){
+                            search(violated, used, depth+1, attribute+1, extension, constraints);
+                        }
+                    } else {
+                        int[] candidate = new int[violated.length+depth+1];
+                        System.arraycopy(violated, 0, candidate, 0, violated.length);
+                        System.arraycopy(extension, 0, candidate, violated.length, depth+1);
+                        Arrays.sort(candidate);
+                        if (minimal(candidate)){
+                            constraints.add(new Conjunction(candidate));
+                        }
+                    }
+                }
+            }
+        }
+
+        //candidate has zero support, it is minimal if removing any of its literals gives non-zero support
+        private boolean minimal(int[] candidate){
+            for (int removed = 0; removed < candidate.length; removed++){
+                System.arraycopy(this.rows, 0, this.scratch, 0, this.rows.length);
+                for (int j = 0; j < candidate.length; j++){
+                    if (j != removed){
+                        this.columns.and(this.scratch, candidate[j] >>> 1, (candidate[j] & 1) == 1);
+                    }
+                }
+                if (ColumnStore.isEmpty(this.scratch)){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
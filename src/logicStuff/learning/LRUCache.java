@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache with bounded number of entries which evicts the least recently used entries. It counts hits and misses
+ * of get(...) so that its efficiency can be checked. It is thread-safe: the entries are split by the hash codes
+ * of the keys into stripes, each of them with its own lock and its own share of the maximum size (so with more than
+ * one stripe, the eviction order is only approximately LRU). Caches shared by several threads should use more stripes.
+ */
+public class LRUCache<K,V> {
+
+    //number of stripes for caches which are accessed by many threads at once
+    public final static int CONCURRENT_STRIPES = 64;
+
+    private LinkedHashMap<K,V>[] stripes;
+
+    private AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    public LRUCache(int maxSize){
+        this(maxSize, 1);
+    }
+
+    /**
+     *
+     * @param maxSize
+     * @param numStripes number of independently locked parts of the cache (rounded up to a power of two)
+     */
+    @SuppressWarnings("unchecked") //generic array creation
+    public LRUCache(int maxSize, int numStripes){
+        int n = 1;
+        while (n < numStripes){
+            n <<= 1;
+        }
+        this.stripes = new LinkedHashMap[n];
+        final int stripeSize = Math.max(1, (maxSize+n-1)/n);
+        for (int i = 0; i < n; i++){
+            this.stripes[i] = new LinkedHashMap<K,V>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > stripeSize;
+                }
+            };
+        }
+    }
+
+    private LinkedHashMap<K,V> stripe(Object key){
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.stripes[h & (this.stripes.length-1)];
+    }
+
+    public V get(K key){
+        LinkedHashMap<K,V> stripe = this.stripe(key);
+        V value;
+        synchronized (stripe){
+            value = stripe.get(key);
+        }
+        if (value == null){
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    public void put(K key, V value){
+        LinkedHashMap<K,V> stripe = this.stripe(key);
+        synchronized (stripe){
+            stripe.put(key, value);
+        }
+    }
+
+    public int size(){
+        int retVal = 0;
+        for (LinkedHashMap<K,V> stripe : this.stripes){
+            synchronized (stripe){
+                retVal += stripe.size();
+            }
+        }
+        return retVal;
+    }
+
+    public void clear(){
+        for (LinkedHashMap<K,V> stripe : this.stripes){
+            synchronized (stripe){
+                stripe.clear();
+            }
+        }
+    }
+
+    public long hits(){
+        return this.hits.get();
+    }
+
+    public long misses(){
+        return this.misses.get();
+    }
+
+    @Override
+    public String toString(){
+        return "LRUCache[size: "+this.size()+", hits: "+this.hits()+", misses: "+this.misses()+"]";
+    }
+}
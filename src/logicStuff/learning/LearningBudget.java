@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+/**
+ * Limits for anytime learning of constraints: wall-clock deadline, maximum size of the beam (i.e. of the set of
+ * conjunctions which are extended in the next level) and maximum used heap. The learning can also be cancelled
+ * from another thread by cancel(). When a limit is hit, the learners stop and return the constraints found so far.
+ */
+public class LearningBudget {
+
+    private long deadline = Long.MAX_VALUE;
+
+    private int maxBeamSize = Integer.MAX_VALUE;
+
+    private long maxHeap = Long.MAX_VALUE;
+
+    private volatile boolean cancelled = false;
+
+    /**
+     *
+     * @param millis the learning will stop after the given number of milliseconds from now
+     */
+    public void setTimeLimit(long millis){
+        this.deadline = System.currentTimeMillis()+millis;
+    }
+
+    /**
+     *
+     * @param deadline time (as given by System.currentTimeMillis()) at which the learning will stop
+     */
+    public void setDeadline(long deadline){
+        this.deadline = deadline;
+    }
+
+    public void setMaxBeamSize(int maxBeamSize){
+        this.maxBeamSize = maxBeamSize;
+    }
+
+    /**
+     *
+     * @param maxHeap maximum number of bytes of used heap (total memory minus free memory of the JVM)
+     */
+    public void setMaxHeap(long maxHeap){
+        this.maxHeap = maxHeap;
+    }
+
+    public void cancel(){
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled(){
+        return this.cancelled;
+    }
+
+    /**
+     *
+     * @return true if the learning was cancelled or the deadline or the heap limit was exceeded
+     */
+    public boolean exhausted(){
+        if (this.cancelled || System.currentTimeMillis() >= this.deadline){
+            return true;
+        }
+        if (this.maxHeap < Long.MAX_VALUE){
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory()-runtime.freeMemory() > this.maxHeap;
+        }
+        return false;
+    }
+
+    public boolean exceedsBeamSize(int beamSize){
+        return beamSize > this.maxBeamSize;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import ida.ilp.logic.Clause;
+
+import java.util.List;
+
+/**
+ * Constraints returned by a learner which was run with a LearningBudget. The constraints are ordered by length. If the
+ * learning was stopped early, all constraints with at most completedLength() literals are contained (and possibly some
+ * longer ones).
+ */
+public class LearningResult {
+
+    private List<Clause> constraints;
+
+    private boolean complete;
+
+    private int completedLength;
+
+    public LearningResult(List<Clause> constraints, boolean complete, int completedLength){
+        this.constraints = constraints;
+        this.complete = complete;
+        this.completedLength = completedLength;
+    }
+
+    public List<Clause> constraints(){
+        return this.constraints;
+    }
+
+    /**
+     *
+     * @return true if the search finished within the budget, i.e. the constraints are the same as without the budget
+     */
+    public boolean isComplete(){
+        return this.complete;
+    }
+
+    public int completedLength(){
+        return this.completedLength;
+    }
+
+    @Override
+    public String toString(){
+        return "LearningResult[constraints: "+this.constraints.size()+", complete: "+this.complete+", completedLength: "+this.completedLength+"]";
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * ColumnStore whose columns are memory-mapped from a file in the binary format written by
+ * BinaryDataset.writeBinary(...). Only the pages which are actually touched by queries are loaded,
+ * so datasets larger than the heap can be counted on.
+ *
+ * File format (big-endian):
+ * <pre>
+ * int magic, int version, int numRows, int numColumns, int flags, int headerLength
+ * numColumns attribute names (in the format of DataOutput.writeUTF)
+ * zero padding up to headerLength (which is a multiple of 8)
+ * numRows doubles with weights of the rows (only if flags has the bit WEIGHTS set)
+ * numRows doubles with multiplicities of the rows (only if flags has the bit MULTIPLICITIES set)
+ * numColumns columns, each of them stored as ceil(numRows/64) longs
+ * </pre>
+ */
+public class MappedColumnStore extends ColumnStore {
+
+    final static int MAGIC = 0x42445331, VERSION = 1;
+
+    final static int WEIGHTS = 1, MULTIPLICITIES = 2;
+
+    private final static int FIXED_HEADER_LENGTH = 24;
+
+    private LongBuffer[] columns;
+
+    private int numRows;
+
+    private MappedColumnStore(LongBuffer[] columns, int numRows){
+        this.columns = columns;
+        this.numRows = numRows;
+    }
+
+    @Override
+    public int numRows() {
+        return this.numRows;
+    }
+
+    @Override
+    public int numColumns() {
+        return this.columns.length;
+    }
+
+    @Override
+    public long word(int column, int wordIndex) {
+        return this.columns[column].get(wordIndex);
+    }
+
+    @Override
+    public void and(long[] mask, int column, boolean positive){
+        LongBuffer c = this.columns[column];
+        if (positive){
+            for (int i = 0; i < mask.length; i++){
+                mask[i] &= c.get(i);
+            }
+        } else {
+            for (int i = 0; i < mask.length; i++){
+                mask[i] &= ~c.get(i);
+            }
+        }
+    }
+
+    @Override
+    public void or(long[] mask, int column, boolean positive){
+        LongBuffer c = this.columns[column];
+        if (positive){
+            for (int i = 0; i < mask.length; i++){
+                mask[i] |= c.get(i);
+            }
+        } else {
+            for (int i = 0; i < mask.length; i++){
+                mask[i] |= ~c.get(i);
+            }
+            clearTail(mask);
+        }
+    }
+
+    static void write(ColumnStore columns, String[] attributeNames, double[] weights, double[] multiplicities, OutputStream outputStream) throws IOException {
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        DataOutputStream namesOut = new DataOutputStream(names);
+        for (String attributeName : attributeNames){
+            namesOut.writeUTF(attributeName);
+        }
+        namesOut.flush();
+        int headerLength = (FIXED_HEADER_LENGTH+names.size()+7) & ~7;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columns.numRows());
+        out.writeInt(columns.numColumns());
+        out.writeInt((weights == null ? 0 : WEIGHTS) | (multiplicities == null ? 0 : MULTIPLICITIES));
+        out.writeInt(headerLength);
+        names.writeTo(out);
+        for (int i = FIXED_HEADER_LENGTH+names.size(); i < headerLength; i++){
+            out.writeByte(0);
+        }
+        if (weights != null){
+            for (double w : weights){
+                out.writeDouble(w);
+            }
+        }
+        if (multiplicities != null){
+            for (double m : multiplicities){
+                out.writeDouble(m);
+            }
+        }
+        int numWords = columns.numWords();
+        for (int j = 0; j < columns.numColumns(); j++){
+            for (int i = 0; i < numWords; i++){
+                out.writeLong(columns.word(j, i));
+            }
+        }
+        out.flush();
+    }
+
+    static BinaryDataset open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_LENGTH);
+            readFully(channel, fixed, 0);
+            fixed.flip();
+            if (fixed.getInt() != MAGIC){
+                throw new IOException("Not a binary dataset file: "+file);
+            }
+            int version = fixed.getInt();
+            if (version != VERSION){
+                throw new IOException("Unsupported version of binary dataset file: "+version);
+            }
+            int numRows = fixed.getInt();
+            int numColumns = fixed.getInt();
+            int flags = fixed.getInt();
+            int headerLength = fixed.getInt();
+
+            ByteBuffer namesBuffer = ByteBuffer.allocate(headerLength-FIXED_HEADER_LENGTH);
+            readFully(channel, namesBuffer, FIXED_HEADER_LENGTH);
+            DataInputStream namesIn = new DataInputStream(new ByteArrayInputStream(namesBuffer.array()));
+            String[] attributeNames = new String[numColumns];
+            for (int j = 0; j < numColumns; j++){
+                attributeNames[j] = namesIn.readUTF();
+            }
+
+            long position = headerLength;
+            double[] weights = null;
+            if ((flags & WEIGHTS) != 0){
+                weights = readDoubles(channel, position, numRows);
+                position += 8L*numRows;
+            }
+            double[] multiplicities = null;
+            if ((flags & MULTIPLICITIES) != 0){
+                multiplicities = readDoubles(channel, position, numRows);
+                position += 8L*numRows;
+            }
+
+            long columnLength = 8L*numWords(numRows);
+            LongBuffer[] columns = new LongBuffer[numColumns];
+            for (int j = 0; j < numColumns; j++){
+                columns[j] = channel.map(FileChannel.MapMode.READ_ONLY, position, columnLength).asLongBuffer();
+                position += columnLength;
+            }
+            //the mapped buffers remain valid after the channel is closed
+            return new BinaryDataset(new MappedColumnStore(columns, numRows), attributeNames, weights, multiplicities);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static double[] readDoubles(FileChannel channel, long position, int length) throws IOException {
+        DoubleBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L*length).asDoubleBuffer();
+        double[] retVal = new double[length];
+        buffer.get(retVal);
+        return retVal;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()){
+            int read = channel.read(buffer, position);
+            if (read < 0){
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+/**
+ * Plain Java implementation of BitKernels. The loops are unrolled and use independent accumulators, so that
+ * the JIT compiler can keep several words in flight (and use the popcnt instruction for Long.bitCount).
+ */
+public class ScalarBitKernels extends BitKernels {
+
+    @Override
+    public void and(long[] mask, long[] column, boolean positive){
+        int n = mask.length, i = 0;
+        if (positive){
+            for (; i+3 < n; i += 4){
+                mask[i] &= column[i];
+                mask[i+1] &= column[i+1];
+                mask[i+2] &= column[i+2];
+                mask[i+3] &= column[i+3];
+            }
+            for (; i < n; i++){
+                mask[i] &= column[i];
+            }
+        } else {
+            for (; i+3 < n; i += 4){
+                mask[i] &= ~column[i];
+                mask[i+1] &= ~column[i+1];
+                mask[i+2] &= ~column[i+2];
+                mask[i+3] &= ~column[i+3];
+            }
+            for (; i < n; i++){
+                mask[i] &= ~column[i];
+            }
+        }
+    }
+
+    @Override
+    public void andInto(long[] target, long[] source, long[] column, boolean positive){
+        int n = target.length, i = 0;
+        if (positive){
+            for (; i+3 < n; i += 4){
+                target[i] = source[i] & column[i];
+                target[i+1] = source[i+1] & column[i+1];
+                target[i+2] = source[i+2] & column[i+2];
+                target[i+3] = source[i+3] & column[i+3];
+            }
+            for (; i < n; i++){
+                target[i] = source[i] & column[i];
+            }
+        } else {
+            for (; i+3 < n; i += 4){
+                target[i] = source[i] & ~column[i];
+                target[i+1] = source[i+1] & ~column[i+1];
+                target[i+2] = source[i+2] & ~column[i+2];
+                target[i+3] = source[i+3] & ~column[i+3];
+            }
+            for (; i < n; i++){
+                target[i] = source[i] & ~column[i];
+            }
+        }
+    }
+
+    @Override
+    public void or(long[] mask, long[] column, boolean positive){
+        if (positive){
+            for (int i = 0; i < mask.length; i++){
+                mask[i] |= column[i];
+            }
+        } else {
+            for (int i = 0; i < mask.length; i++){
+                mask[i] |= ~column[i];
+            }
+        }
+    }
+
+    @Override
+    public int cardinality(long[] mask){
+        int n = mask.length, i = 0;
+        int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        for (; i+3 < n; i += 4){
+            c0 += Long.bitCount(mask[i]);
+            c1 += Long.bitCount(mask[i+1]);
+            c2 += Long.bitCount(mask[i+2]);
+            c3 += Long.bitCount(mask[i+3]);
+        }
+        for (; i < n; i++){
+            c0 += Long.bitCount(mask[i]);
+        }
+        return c0+c1+c2+c3;
+    }
+
+    @Override
+    public double sum(long[] mask, double[] weights){
+        double retVal = 0;
+        for (int i = 0; i < mask.length; i++){
+            long word = mask[i];
+            if (word == -1L){
+                int offset = i << 6;
+                for (int j = 0; j < 64; j++){
+                    retVal += weights[offset+j];
+                }
+            } else {
+                while (word != 0){
+                    retVal += weights[(i << 6)+Long.numberOfTrailingZeros(word)];
+                    word &= word-1;
+                }
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public String toString(){
+        return "ScalarBitKernels";
+    }
+}
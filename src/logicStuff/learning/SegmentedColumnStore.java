@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColumnStore consisting of segments of the same length (in words, a power of two). A segment is an array
+ * long[numColumns][segmentWords] holding the columns of segmentWords*64 consecutive rows. Segments can be
+ * built independently (e.g. by different threads) and they are never copied when the store is assembled.
+ */
+public class SegmentedColumnStore extends ColumnStore {
+
+    private List<long[][]> segments;
+
+    private int segmentShift;
+
+    private int segmentWords;
+
+    private int numColumns;
+
+    private int numRows;
+
+    /**
+     *
+     * @param segments all segments except the last one must be full
+     * @param segmentWords number of words of a segment, must be a power of two
+     * @param numColumns
+     * @param numRows
+     */
+    public SegmentedColumnStore(List<long[][]> segments, int segmentWords, int numColumns, int numRows){
+        if (Integer.bitCount(segmentWords) != 1){
+            throw new IllegalArgumentException("The number of words in a segment must be a power of two.");
+        }
+        this.segments = new ArrayList<long[][]>(segments);
+        this.segmentWords = segmentWords;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentWords);
+        this.numColumns = numColumns;
+        this.numRows = numRows;
+    }
+
+    @Override
+    public int numRows() {
+        return this.numRows;
+    }
+
+    @Override
+    public int numColumns() {
+        return this.numColumns;
+    }
+
+    @Override
+    public long word(int column, int wordIndex) {
+        return this.segments.get(wordIndex >>> this.segmentShift)[column][wordIndex & (this.segmentWords-1)];
+    }
+
+    @Override
+    public void and(long[] mask, int column, boolean positive){
+        for (int s = 0, offset = 0; offset < mask.length; s++, offset += this.segmentWords){
+            long[] c = this.segments.get(s)[column];
+            int length = Math.min(this.segmentWords, mask.length-offset);
+            if (positive){
+                for (int i = 0; i < length; i++){
+                    mask[offset+i] &= c[i];
+                }
+            } else {
+                for (int i = 0; i < length; i++){
+                    mask[offset+i] &= ~c[i];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void or(long[] mask, int column, boolean positive){
+        for (int s = 0, offset = 0; offset < mask.length; s++, offset += this.segmentWords){
+            long[] c = this.segments.get(s)[column];
+            int length = Math.min(this.segmentWords, mask.length-offset);
+            if (positive){
+                for (int i = 0; i < length; i++){
+                    mask[offset+i] |= c[i];
+                }
+            } else {
+                for (int i = 0; i < length; i++){
+                    mask[offset+i] |= ~c[i];
+                }
+            }
+        }
+        if (!positive){
+            clearTail(mask);
+        }
+    }
+
+    public int segmentWords(){
+        return this.segmentWords;
+    }
+
+    public List<long[][]> segments(){
+        return this.segments;
+    }
+}
@@ -11,18 +11,21 @@
 package logicStuff.learning;
 
 import ida.ilp.logic.*;
-import ida.ilp.logic.special.IsoClauseWrapper;
 import ida.utils.Sugar;
 import ida.utils.tuples.Pair;
 import logicStuff.theories.TheorySimplifier;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by ondrejkuzelka on 01/02/17.
  */
 public class ShortConstraintLearner {
 
+    private final static int MATCHING_CACHE_SIZE = 1 << 16;
+
     private int maxVariables = 3;
 
     private int maxLength = 2;
@@ -31,9 +34,19 @@ public class ShortConstraintLearner {
 
     private Set<Pair<String,Integer>> allPredicates;
 
+    private int parallelism = 1;
+
+    /**
+     * Switches on the matching cache of the dataset (unless it is already on), the candidate constraints are short
+     * and the cache lets matches(...) skip the refinements of clauses which do not match.
+     * @param dataset
+     */
     public ShortConstraintLearner(Dataset dataset){
         this.dataset = dataset;
         this.allPredicates = this.dataset.allPredicates();
+        if (this.dataset.matchingCache() == null){
+            this.dataset.setMatchingCacheSize(MATCHING_CACHE_SIZE);
+        }
     }
 
     public ShortConstraintLearner(Dataset dataset, int maxLength, int maxVariables){
@@ -48,32 +61,130 @@ public class ShortConstraintLearner {
      * @return
      */
     public List<Clause> learnConstraints(){
-        Set<IsoClauseWrapper> constraints = new HashSet<IsoClauseWrapper>();
-        Set<IsoClauseWrapper> beam = new HashSet<IsoClauseWrapper>();
-        beam.add(new IsoClauseWrapper(new Clause()));
-        for (int i = 0; i < maxLength; i++){
-            Set<IsoClauseWrapper> newBeam = new HashSet<IsoClauseWrapper>();
-            for (IsoClauseWrapper c : beam){
-                for (Clause cand : refinements(c.getOriginalClause())) {
-                    if (!dataset.matches(cand)) {
-                        if (minimal(cand, dataset)) {
-                            constraints.add(new IsoClauseWrapper(LogicUtils.flipSigns(cand)));
-                        }
-                    } else if (cand.countLiterals() < maxLength) {
-                        newBeam.add(new IsoClauseWrapper(cand));
-                    }
+        return learnConstraints(new LearningBudget()).constraints();
+    }
+
+    /**
+     * Learns the constraints level by level (constraints with i literals are found before the ones with i+1 literals),
+     * checking the budget after every refinement. When the budget is exhausted (or the next beam would exceed its maximum
+     * size), the constraints found so far are simplified and returned. The same assumption about alldiff holds as for
+     * learnConstraints().
+     * @param budget
+     * @return
+     */
+    public LearningResult learnConstraints(LearningBudget budget){
+        //with parallelism > 1, the refinements of the clauses in the beam are evaluated by several threads
+        //(Dataset.matches(...) uses a separate Matching in every thread) and added to concurrent sets
+        Set<CanonicalClause> constraints = this.newSet();
+        Set<CanonicalClause> beam = new HashSet<CanonicalClause>();
+        beam.add(new CanonicalClause(new Clause()));
+        boolean complete = true;
+        int completedLength = maxLength;
+        ExecutorService executor = this.parallelism > 1 ? Executors.newFixedThreadPool(this.parallelism) : null;
+        try {
+            for (int i = 0; i < maxLength; i++){
+                Set<CanonicalClause> newBeam = this.newSet();
+                if (!this.expand(beam, constraints, newBeam, budget, executor)){
+                    complete = false;
+                    completedLength = i;
+                    break;
                 }
+                beam = newBeam;
+            }
+        } finally {
+            if (executor != null){
+                executor.shutdown();
             }
-            beam = newBeam;
         }
         int numVars = 0;
         Set<Clause> retVal = new HashSet<Clause>();
-        for (IsoClauseWrapper icw : constraints){
+        for (CanonicalClause icw : constraints){
             retVal.add(icw.getOriginalClause());
             numVars = Math.max(numVars, icw.getOriginalClause().variables().size());
         }
-        return TheorySimplifier.simplify(retVal, numVars + 1);
+        List<Clause> simplified = TheorySimplifier.simplify(retVal, numVars + 1);
 //        return Sugar.listFromCollections(retVal);
+        Collections.sort(simplified, new Comparator<Clause>() {
+            @Override
+            public int compare(Clause o1, Clause o2) {
+                return o1.countLiterals()-o2.countLiterals();
+            }
+        });
+        return new LearningResult(simplified, complete, completedLength);
+    }
+
+    private Set<CanonicalClause> newSet(){
+        if (this.parallelism > 1){
+            return Collections.newSetFromMap(new ConcurrentHashMap<CanonicalClause,Boolean>());
+        }
+        return new HashSet<CanonicalClause>();
+    }
+
+    //evaluates the refinements of all clauses in the beam, returns false if the budget was exhausted
+    private boolean expand(Set<CanonicalClause> beam, final Set<CanonicalClause> constraints, final Set<CanonicalClause> newBeam,
+                           final LearningBudget budget, ExecutorService executor){
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        if (executor == null){
+            for (CanonicalClause c : beam){
+                if (!expand(c, constraints, newBeam, budget, stopped)){
+                    return false;
+                }
+            }
+            return true;
+        }
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (final CanonicalClause c : beam){
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return !stopped.get() && expand(c, constraints, newBeam, budget, stopped);
+                }
+            });
+        }
+        try {
+            for (Future<Boolean> future : executor.invokeAll(tasks)){
+                future.get();
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e){
+            throw new RuntimeException(e.getCause());
+        }
+        return !stopped.get();
+    }
+
+    //stopped is shared by all the tasks expanding the same beam, the first one to hit the budget stops the others
+    private boolean expand(CanonicalClause c, Set<CanonicalClause> constraints, Set<CanonicalClause> newBeam, LearningBudget budget, AtomicBoolean stopped){
+        for (Clause cand : refinements(c.getOriginalClause())) {
+            if (stopped.get()){
+                return false;
+            }
+            if (budget.exhausted()){
+                stopped.set(true);
+                return false;
+            }
+            if (!dataset.matches(cand)) {
+                if (minimal(cand, dataset)) {
+                    constraints.add(new CanonicalClause(LogicUtils.flipSigns(cand)));
+                }
+            } else if (cand.countLiterals() < maxLength) {
+                newBeam.add(new CanonicalClause(cand));
+                if (budget.exceedsBeamSize(newBeam.size())){
+                    stopped.set(true);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param parallelism number of threads evaluating refinements
+     */
+    public void setParallelism(int parallelism){
+        this.parallelism = parallelism;
     }
 
     //quick naive hack
@@ -87,21 +198,22 @@ public class ShortConstraintLearner {
     }
 
     private List<Clause> refinements(Clause clause){
-        Set<IsoClauseWrapper> set = new HashSet<IsoClauseWrapper>();
+        Set<CanonicalClause> set = new HashSet<CanonicalClause>();
         for (Pair<String,Integer> predicate : allPredicates){
             for (Clause newClause : Sugar.union(refinements(clause, predicate, true), refinements(clause, predicate, false))) {
-                set.add(new IsoClauseWrapper(newClause));
+                set.add(new CanonicalClause(newClause));
             }
         }
+        //only one representative of every isomorphism class is returned
         List<Clause> retVal = new ArrayList<Clause>();
-        for (IsoClauseWrapper icw : set){
-            retVal.add(icw.getOriginalClause());
+        for (CanonicalClause icw : set){
+            retVal.add(icw.representative());
         }
         return retVal;
     }
 
     private List<Clause> refinements(Clause clause, Pair<String,Integer> predicate, boolean negated){
-        Map<IsoClauseWrapper,Literal> refinements = new HashMap<IsoClauseWrapper,Literal>();
+        Map<CanonicalClause,Literal> refinements = new HashMap<CanonicalClause,Literal>();
         Set<Variable> variables = clause.variables();
         Set<Variable> freshVariables = LogicUtils.freshVariables(variables, predicate.s);
         Literal freshLiteral = LogicUtils.newLiteral(predicate.r, predicate.s, freshVariables);
@@ -110,11 +222,11 @@ public class ShortConstraintLearner {
         }
 
         Clause init = new Clause(Sugar.union(clause.literals(), freshLiteral));
-        refinements.put(new IsoClauseWrapper(init), freshLiteral);
+        refinements.put(new CanonicalClause(init), freshLiteral);
 
         for (int i = 0; i < predicate.s; i++){
-            Map<IsoClauseWrapper,Literal> newRefinements = new HashMap<IsoClauseWrapper, Literal>();
-            for (Map.Entry<IsoClauseWrapper,Literal> entry : refinements.entrySet()){
+            Map<CanonicalClause,Literal> newRefinements = new HashMap<CanonicalClause, Literal>();
+            for (Map.Entry<CanonicalClause,Literal> entry : refinements.entrySet()){
                 Variable x = (Variable)entry.getValue().get(i);
                 for (Variable v : entry.getKey().getOriginalClause().variables()){
                     if (v != x){
@@ -123,16 +235,16 @@ public class ShortConstraintLearner {
                         if (substituted.countLiterals() > clause.countLiterals() && !substituted.containsLiteral(newLiteral.negation())) {
                             HornClause candidate = new HornClause(substituted);
                             Clause candClause = candidate.toClause();
-                            newRefinements.put(new IsoClauseWrapper(candClause), newLiteral);
+                            newRefinements.put(new CanonicalClause(candClause), newLiteral);
                         }
                     }
                 }
             }
             refinements.putAll(newRefinements);
         }
-        Set<IsoClauseWrapper> refinementSet = refinements.keySet();
+        Set<CanonicalClause> refinementSet = refinements.keySet();
         List<Clause> retVal = new ArrayList<Clause>();
-        for (IsoClauseWrapper icw : refinementSet){
+        for (CanonicalClause icw : refinementSet){
             if (icw.getOriginalClause().variables().size() <= this.maxVariables) {
                 retVal.add(icw.getOriginalClause());
             }
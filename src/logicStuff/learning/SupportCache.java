@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import ida.ilp.logic.Literal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cache of counts of conjunctions of literals in a BinaryDataset. A conjunction is represented by a bitmask
+ * which has bit 2*i set iff it contains the literal !attribute_i and bit 2*i+1 set iff it contains attribute_i.
+ *
+ * One cache must be used only with one dataset.
+ */
+public class SupportCache {
+
+    private LRUCache<Key,Double> cache;
+
+    public SupportCache(int maxSize){
+        this.cache = new LRUCache<Key,Double>(maxSize);
+    }
+
+    /**
+     * Counts the given conjunctions, the ones which are not in the cache are counted in one batch by
+     * dataset.count(List), the rest is taken from the cache.
+     * @param dataset
+     * @param conjunctions
+     * @return array whose i-th element is dataset.count(conjunctions.get(i))
+     */
+    public double[] count(BinaryDataset dataset, List<? extends Set<Literal>> conjunctions){
+        double[] retVal = new double[conjunctions.size()];
+        List<Set<Literal>> missing = new ArrayList<Set<Literal>>();
+        List<Key> missingKeys = new ArrayList<Key>();
+        List<Integer> missingIndices = new ArrayList<Integer>();
+        int words = (2*dataset.attributes().length+63) >>> 6;
+        int i = 0;
+        for (Set<Literal> conjunction : conjunctions){
+            Key key = new Key(dataset, conjunction, words);
+            Double count = this.cache.get(key);
+            if (count == null){
+                missing.add(conjunction);
+                missingKeys.add(key);
+                missingIndices.add(i);
+            } else {
+                retVal[i] = count;
+            }
+            i++;
+        }
+        if (!missing.isEmpty()){
+            double[] counts = dataset.count(missing);
+            for (int j = 0; j < counts.length; j++){
+                retVal[missingIndices.get(j)] = counts[j];
+                this.cache.put(missingKeys.get(j), counts[j]);
+            }
+        }
+        return retVal;
+    }
+
+    public double count(BinaryDataset dataset, Set<Literal> conjunction){
+        List<Set<Literal>> list = new ArrayList<Set<Literal>>();
+        list.add(conjunction);
+        return count(dataset, list)[0];
+    }
+
+    public long hits(){
+        return this.cache.hits();
+    }
+
+    public long misses(){
+        return this.cache.misses();
+    }
+
+    public int size(){
+        return this.cache.size();
+    }
+
+    public void clear(){
+        this.cache.clear();
+    }
+
+    @Override
+    public String toString(){
+        return "SupportCache[size: "+size()+", hits: "+hits()+", misses: "+misses()+"]";
+    }
+
+    private static class Key {
+
+        private long[] bits;
+
+        private int hashCode;
+
+        private Key(BinaryDataset dataset, Set<Literal> conjunction, int words){
+            this.bits = new long[words];
+            for (Literal l : conjunction){
+                int bit = 2*dataset.attributeIndex(l.predicate())+(l.isNegated() ? 0 : 1);
+                this.bits[bit >>> 6] |= 1L << bit;
+            }
+            this.hashCode = Arrays.hashCode(this.bits);
+        }
+
+        @Override
+        public int hashCode(){
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof Key && Arrays.equals(this.bits, ((Key)o).bits);
+        }
+    }
+}
@@ -40,7 +40,7 @@ public class UnaryConstraintLearner {
     }
 
     public List<Clause> learnRules(){
-        BinaryDataset binaryDataset = toPropositionalDataset();
+        BinaryDataset binaryDataset = toPropositionalDataset().compact();
         ConstraintLearner cl = new ConstraintLearner();
         Set<Clause> constraints = cl.learnConstraints(binaryDataset, this.maxLength);
         List<Clause> retVal = new ArrayList<Clause>();
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.theories;
+
+import ida.ilp.logic.*;
+import ida.ilp.logic.subsumption.SpecialVarargPredicates;
+import ida.utils.tuples.Pair;
+
+import java.util.*;
+
+/**
+ * First-order rule prepared once for repeated grounding by TheorySolver. It keeps the query with flipped signs used for
+ * finding violated groundings, the stub used by groundAll(...) and, for every literal, whether it is special,
+ * deterministic or ordinary, so that ground instances can be built and filtered without recomputing these per substitution.
+ */
+class CompiledRule {
+
+    final static int ORDINARY = 0, SPECIAL = 1, DETERMINISTIC = 2;
+
+    private final Clause rule;
+
+    private final Clause query;
+
+    private final Clause stubQuery;
+
+    private final Literal[] literals;
+
+    private final List<Pair<String,Integer>> keys;
+
+    private final int[] kinds;
+
+    private final int numOrdinaryLiterals;
+
+    private final Set<Constant> constants;
+
+    CompiledRule(Clause rule, Set<Pair<String,Integer>> deterministicPredicates){
+        this.rule = rule;
+        this.query = LogicUtils.flipSigns(rule);
+        this.literals = rule.literals().toArray(new Literal[rule.literals().size()]);
+        this.keys = new ArrayList<Pair<String,Integer>>(this.literals.length);
+        this.kinds = new int[this.literals.length];
+        int numOrdinary = 0;
+        Set<Literal> stubLiterals = new HashSet<Literal>();
+        for (int i = 0; i < this.literals.length; i++){
+            Literal l = this.literals[i];
+            Pair<String,Integer> key = new Pair<String,Integer>(l.predicate(), l.arity());
+            this.keys.add(key);
+            if (TheorySolver.SPECIAL_PREDICATES.contains(l.predicate())){
+                this.kinds[i] = SPECIAL;
+                stubLiterals.add(l);
+            } else if (deterministicPredicates.contains(key)){
+                this.kinds[i] = DETERMINISTIC;
+                stubLiterals.add(l);
+            } else {
+                this.kinds[i] = ORDINARY;
+                numOrdinary++;
+            }
+        }
+        this.numOrdinaryLiterals = numOrdinary;
+        Set<Variable> variables = rule.variables();
+        Literal variablesIntroduction = new Literal(SpecialVarargPredicates.TRUE, true, variables.size());
+        int i = 0;
+        for (Variable var : variables){
+            variablesIntroduction.set(var, i++);
+        }
+        stubLiterals.add(variablesIntroduction);
+        this.stubQuery = LogicUtils.flipSigns(new Clause(stubLiterals));
+        this.constants = LogicUtils.constants(rule);
+    }
+
+    Clause rule(){
+        return this.rule;
+    }
+
+    /**
+     * @return the rule with flipped signs, its substitutions in a state are the violated groundings of the rule
+     */
+    Clause query(){
+        return this.query;
+    }
+
+    /**
+     * @return the stub of the rule (special and deterministic literals and a literal containing all its variables) with flipped signs
+     */
+    Clause stubQuery(){
+        return this.stubQuery;
+    }
+
+    int size(){
+        return this.literals.length;
+    }
+
+    Literal literal(int i){
+        return this.literals[i];
+    }
+
+    Pair<String,Integer> key(int i){
+        return this.keys.get(i);
+    }
+
+    int kind(int i){
+        return this.kinds[i];
+    }
+
+    int numOrdinaryLiterals(){
+        return this.numOrdinaryLiterals;
+    }
+
+    Set<Constant> constants(){
+        return this.constants;
+    }
+
+    /**
+     * @param variables the variables in the order in which their values are given to the methods of the returned Grounding
+     *                  (e.g. the first element of the result of Matching.allSubstitutions(...))
+     * @param fixed values of variables which are not contained in variables, may be null
+     * @return
+     */
+    Grounding grounding(Term[] variables, Map<Term,Term> fixed){
+        return new Grounding(variables, fixed);
+    }
+
+    class Grounding {
+
+        //for every argument of every literal, index of the variable in the substitution or -1 if the argument is given by terms
+        private final int[][] slots;
+
+        private final Term[][] terms;
+
+        private Grounding(Term[] variables, Map<Term,Term> fixed){
+            Map<Term,Integer> indices = new HashMap<Term,Integer>();
+            for (int i = 0; i < variables.length; i++){
+                indices.put(variables[i], i);
+            }
+            this.slots = new int[literals.length][];
+            this.terms = new Term[literals.length][];
+            for (int i = 0; i < literals.length; i++){
+                Literal l = literals[i];
+                this.slots[i] = new int[l.arity()];
+                this.terms[i] = new Term[l.arity()];
+                for (int j = 0; j < l.arity(); j++){
+                    Term t = l.get(j);
+                    Integer index = indices.get(t);
+                    if (index != null){
+                        this.slots[i][j] = index;
+                    } else {
+                        this.slots[i][j] = -1;
+                        this.terms[i][j] = fixed != null && fixed.containsKey(t) ? fixed.get(t) : t;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param i index of the literal
+         * @param values values of the variables
+         * @param atom if true, the sign of the literal is ignored and the corresponding atom is returned
+         * @return
+         */
+        Literal literal(int i, Term[] values, boolean atom){
+            Literal l = literals[i];
+            int[] s = this.slots[i];
+            Literal retVal = new Literal(l.predicate(), !atom && l.isNegated(), s.length);
+            for (int j = 0; j < s.length; j++){
+                retVal.set(s[j] < 0 ? this.terms[i][j] : values[s[j]], j);
+            }
+            return retVal;
+        }
+
+        Clause ground(Term[] values){
+            List<Literal> ground = new ArrayList<Literal>(literals.length);
+            for (int i = 0; i < literals.length; i++){
+                ground.add(this.literal(i, values, false));
+            }
+            return new Clause(ground);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.theories;
+
+import ida.ilp.logic.Clause;
+import ida.ilp.logic.Literal;
+
+import java.util.*;
+
+/**
+ * Dictionary of ground atoms which assigns them dense integer ids starting from 1, so that they can be used directly as
+ * variables of SAT solvers. Ground clauses can be encoded as int[] (negative numbers for negated atoms) and sets of true
+ * atoms (models) as BitSets; atoms(BitSet) wraps such a model as a Set&lt;Literal&gt;, which converts ids to literals
+ * only when it is iterated.
+ *
+ * Ids are never released, so a table should not outlive the problem it encodes (IncrementalSatSolver starts a new one
+ * whenever it rebuilds its solver). The table is not thread-safe.
+ */
+public class GroundAtomTable {
+
+    private Map<Literal,Integer> ids = new HashMap<Literal,Integer>();
+
+    //indexed by ids, auxiliary variables are mapped to null
+    private List<Literal> atoms = new ArrayList<Literal>();
+
+    public GroundAtomTable(){
+        this.atoms.add(null);
+    }
+
+    /**
+     *
+     * @param atom positive ground literal
+     * @return id of the atom (it is added to the table if it is not there yet)
+     */
+    public int id(Literal atom){
+        Integer id = this.ids.get(atom);
+        if (id == null){
+            id = this.atoms.size();
+            this.atoms.add(atom);
+            this.ids.put(atom, id);
+        }
+        return id;
+    }
+
+    /**
+     *
+     * @param atom positive ground literal
+     * @return id of the atom or 0 if it is not in the table
+     */
+    public int idIfPresent(Literal atom){
+        Integer id = this.ids.get(atom);
+        return id == null ? 0 : id;
+    }
+
+    /**
+     *
+     * @param literal ground literal
+     * @return id of the atom of the literal, negated if the literal is negated
+     */
+    public int literal(Literal literal){
+        return literal.isNegated() ? -this.id(literal.negation()) : this.id(literal);
+    }
+
+    public int[] clause(Clause clause){
+        int[] retVal = new int[clause.literals().size()];
+        int i = 0;
+        for (Literal l : clause.literals()){
+            retVal[i++] = this.literal(l);
+        }
+        return retVal;
+    }
+
+    /**
+     *
+     * @return a new id which does not correspond to any atom (e.g. for auxiliary variables of SAT encodings)
+     */
+    public int auxiliary(){
+        this.atoms.add(null);
+        return this.atoms.size()-1;
+    }
+
+    public boolean isAuxiliary(int id){
+        return this.atoms.get(id) == null;
+    }
+
+    public Literal atom(int id){
+        return this.atoms.get(id);
+    }
+
+    /**
+     *
+     * @return the largest id assigned so far
+     */
+    public int size(){
+        return this.atoms.size()-1;
+    }
+
+    /**
+     *
+     * @param model ids of true atoms
+     * @return set of the true atoms backed by the given BitSet (adding and removing atoms modifies it)
+     */
+    public Set<Literal> atoms(BitSet model){
+        return new AtomSet(model);
+    }
+
+    /**
+     *
+     * @param atoms
+     * @return BitSet with ids of the given atoms - for sets returned by atoms(BitSet) of this table, it is the backing BitSet itself
+     */
+    public BitSet bits(Set<Literal> atoms){
+        if (atoms instanceof AtomSet && ((AtomSet)atoms).table() == this){
+            return ((AtomSet)atoms).bits;
+        }
+        BitSet retVal = new BitSet(this.atoms.size());
+        for (Literal atom : atoms){
+            retVal.set(this.id(atom));
+        }
+        return retVal;
+    }
+
+    /**
+     *
+     * @param atoms
+     * @return the table backing the given set if it was returned by atoms(BitSet) of some table, null otherwise
+     */
+    public static GroundAtomTable tableOf(Set<Literal> atoms){
+        return atoms instanceof AtomSet ? ((AtomSet)atoms).table() : null;
+    }
+
+    private class AtomSet extends AbstractSet<Literal> {
+
+        private final BitSet bits;
+
+        private AtomSet(BitSet bits){
+            this.bits = bits;
+        }
+
+        private GroundAtomTable table(){
+            return GroundAtomTable.this;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer id = ids.get(o);
+            return id != null && this.bits.get(id);
+        }
+
+        @Override
+        public boolean add(Literal atom) {
+            int id = id(atom);
+            if (this.bits.get(id)){
+                return false;
+            }
+            this.bits.set(id);
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            Integer id = ids.get(o);
+            if (id == null || !this.bits.get(id)){
+                return false;
+            }
+            this.bits.clear(id);
+            return true;
+        }
+
+        @Override
+        public Iterator<Literal> iterator() {
+            return new Iterator<Literal>() {
+
+                private int next = bits.nextSetBit(0);
+
+                private int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return this.next >= 0;
+                }
+
+                @Override
+                public Literal next() {
+                    if (this.next < 0){
+                        throw new NoSuchElementException();
+                    }
+                    this.last = this.next;
+                    this.next = bits.nextSetBit(this.next+1);
+                    return atoms.get(this.last);
+                }
+
+                @Override
+                public void remove() {
+                    if (this.last < 0){
+                        throw new IllegalStateException();
+                    }
+                    bits.clear(this.last);
+                    this.last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.bits.cardinality();
+        }
+    }
+}
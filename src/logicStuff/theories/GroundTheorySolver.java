@@ -16,7 +16,6 @@ import ida.ilp.logic.LogicUtils;
 import ida.ilp.logic.subsumption.SpecialBinaryPredicates;
 import ida.ilp.logic.subsumption.SpecialVarargPredicates;
 import ida.utils.Sugar;
-import ida.utils.collections.ValueToIndex;
 import ida.utils.tuples.Pair;
 import org.sat4j.core.VecInt;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
@@ -49,7 +48,7 @@ public class GroundTheorySolver {
 
     private List<Literal> hardXorConstraints = new ArrayList<Literal>();
 
-    private List<Literal> auxXorLiterals = new ArrayList<Literal>();
+    private List<Integer> auxXorVariables = new ArrayList<Integer>();
 
     private List<Pair<int[],Integer>> hardDimacsAtLeastConstraints;
 
@@ -57,7 +56,10 @@ public class GroundTheorySolver {
 
     private List<Pair<int[],Boolean>> hardDimacsXorConstraints;
 
-    private ValueToIndex<Literal> literalsToIndices = new ValueToIndex<Literal>(1);
+    private GroundAtomTable atoms;
+
+    //ids of the atoms (and auxiliary variables) from atoms which are used by this problem
+    private BitSet used = new BitSet();
 
     private int optimizationTimeout = Integer.MAX_VALUE;
 
@@ -80,11 +82,22 @@ public class GroundTheorySolver {
     }
 
     public GroundTheorySolver(Collection<Clause> hardClauses, Set<Literal> groundAtoms, Collection<Pair<Clause, BigInteger>> softClauses){
-        Set<String> allPredicates = new HashSet<String>();
+        this(hardClauses, groundAtoms, softClauses, new GroundAtomTable());
+    }
+
+    /**
+     *
+     * @param hardClauses
+     * @param groundAtoms
+     * @param softClauses
+     * @param atoms table used for encoding the atoms, the solutions are returned as sets backed by BitSets over its ids
+     */
+    public GroundTheorySolver(Collection<Clause> hardClauses, Set<Literal> groundAtoms, Collection<Pair<Clause, BigInteger>> softClauses, GroundAtomTable atoms){
+        this.atoms = atoms;
         if (softClauses != null) {
             for (Pair<Clause, BigInteger> c : softClauses) {
                 for (Literal literal : c.r.literals()) {
-                    literalsToIndices.valueToIndex(literal.isNegated() ? literal.negation() : literal);
+                    this.index(literal.isNegated() ? literal.negation() : literal);
                 }
                 if (c.s == null) {
                     this.hardClauses.add(c.r);
@@ -100,32 +113,48 @@ public class GroundTheorySolver {
         this.softDimacsClauses = this.toSoftDimacsClauses(this.softClauses);
         for (Clause c : hardClauses) {
             Set<String> predicates = c.predicates();
-            allPredicates.addAll(predicates);
             if (predicates.contains(ATLEAST) || predicates.contains(ATMOST)) {
                 addCardinalityConstraint(c);
             } else if (predicates.contains(XOR)) {
                 addXorConstraint(c);
             } else {
                 for (Literal literal : c.literals()) {
-                    literalsToIndices.valueToIndex(literal.isNegated() ? literal.negation() : literal);
+                    this.index(literal.isNegated() ? literal.negation() : literal);
                 }
                 this.hardClauses.add(c);
             }
         }
         if (groundAtoms != null){
             for (Literal l : groundAtoms) {
-                this.literalsToIndices.valueToIndex(l);
+                this.index(l);
             }
         }
         this.hardDimacsAtLeastConstraints = this.toHardDimacsCardinalityConstraints(this.hardAtLeastConstraints);
         this.hardDimacsAtMostConstraints = this.toHardDimacsCardinalityConstraints(this.hardAtMostConstraints);
         this.hardDimacsClauses = this.toHardDimacsClauses(this.hardClauses);
         this.hardDimacsXorConstraints = this.toHardDimacsXorConstraints(this.hardXorConstraints);
-        for (String predicateName : LogicUtils.freshPredicateNames(allPredicates, this.hardXorConstraints.size())){
-            Literal auxLit = new Literal(predicateName);
-            this.auxXorLiterals.add(auxLit);
-            this.literalsToIndices.valueToIndex(auxLit);
+        for (int i = 0; i < this.hardXorConstraints.size(); i++){
+            int auxVariable = this.atoms.auxiliary();
+            this.used.set(auxVariable);
+            this.auxXorVariables.add(auxVariable);
+        }
+    }
+
+    private int index(Literal atom){
+        int index = this.atoms.id(atom);
+        this.used.set(index);
+        return index;
+    }
+
+    //converts a model of the sat4j solver to the set of true atoms
+    private Set<Literal> solution(int[] model){
+        BitSet solution = new BitSet(this.atoms.size()+1);
+        for (int i : model){
+            if (i > 0 && this.used.get(i) && !this.atoms.isAuxiliary(i)){
+                solution.set(i);
+            }
         }
+        return this.atoms.atoms(solution);
     }
 
     private void addCardinalityConstraint(Clause cardinalityConstraint){
@@ -155,7 +184,7 @@ public class GroundTheorySolver {
             if (this.solver == null) {
                 this.solver = new GateTranslator(SolverFactory.newDefault());
                 //this.solver = SolverFactory.newMiniLearningHeap();
-                this.solver.newVar(this.literalsToIndices.size());
+                this.solver.newVar(this.atoms.size());
                 this.solver.setExpectedNumberOfClauses(hardClauses.size() + softClauses.size() + hardXorConstraints.size() + hardAtLeastConstraints.size() + hardAtMostConstraints.size());
                 try {
                     for (int[] clause : hardDimacsClauses) {
@@ -169,7 +198,7 @@ public class GroundTheorySolver {
                     }
                     int xorIndex = 0;
                     for (Pair<int[], Boolean> xor : this.hardDimacsXorConstraints) {
-                        int auxLitIndex = this.literalsToIndices.valueToIndex(auxXorLiterals.get(xorIndex));
+                        int auxLitIndex = this.auxXorVariables.get(xorIndex);
                         this.solver.xor(auxLitIndex, new VecInt(xor.r));
                         this.solver.addClause(new VecInt(new int[]{xor.s ? auxLitIndex : -auxLitIndex}));
                         xorIndex++;
@@ -180,19 +209,8 @@ public class GroundTheorySolver {
             }
 
             IProblem problem = this.solver;
-            Set<Literal> auxLiteralsSet = Sugar.setFromCollections(this.auxXorLiterals);
             if (problem.isSatisfiable()) {
-                int[] model = problem.model();
-                Set<Literal> solution = new HashSet<Literal>();
-                for (int i : model){
-                    if (i > 0){
-                        Literal l = literalsToIndices.indexToValue(i);
-                        if (!auxLiteralsSet.contains(l)) {
-                            solution.add(l);
-                        }
-                    }
-                }
-                return solution;
+                return this.solution(problem.model());
             }
             return null;
         } catch (TimeoutException e){
@@ -207,7 +225,7 @@ public class GroundTheorySolver {
             if (this.solver == null) {
                 this.solver = new GateTranslator(SolverFactory.newDefault());
                 //this.solver = SolverFactory.newMiniLearningHeap();
-                this.solver.newVar(this.literalsToIndices.size());
+                this.solver.newVar(this.atoms.size());
                 this.solver.setExpectedNumberOfClauses(hardClauses.size() + softClauses.size());
                 try {
                     for (int[] clause : hardDimacsClauses) {
@@ -222,14 +240,18 @@ public class GroundTheorySolver {
                     int xorIndex = 0;
                     for (Pair<int[], Boolean> xor : this.hardDimacsXorConstraints) {
                         //System.out.println("xor: "+ VectorUtils.intArrayToString(xor.r));
-                        int auxLitIndex = this.literalsToIndices.valueToIndex(auxXorLiterals.get(xorIndex));
+                        int auxLitIndex = this.auxXorVariables.get(xorIndex);
                         this.solver.xor(auxLitIndex, new VecInt(xor.r));
                         this.solver.addClause(new VecInt(new int[]{xor.s ? auxLitIndex : -auxLitIndex}));
                         xorIndex++;
                     }
-                    for (Literal l : literalsToIndices.values()){
-                        int lIndex = literalsToIndices.valueToIndex(l);
-                        this.solver.addClause(new VecInt(new int[]{lIndex,-lIndex}));
+                    for (int lIndex = 1; lIndex <= this.atoms.size(); lIndex++){
+                        if (this.used.get(lIndex)) {
+                            this.solver.addClause(new VecInt(new int[]{lIndex, -lIndex}));
+                        } else {
+                            //atoms of a shared table which do not appear in this problem must not multiply the solutions
+                            this.solver.addClause(new VecInt(new int[]{-lIndex}));
+                        }
                     }
                 } catch (ContradictionException ce){
                     return retVal;
@@ -237,20 +259,9 @@ public class GroundTheorySolver {
             }
 
             IProblem problem = new ModelIterator(this.solver);
-            Set<Literal> auxLiteralsSet = Sugar.setFromCollections(this.auxXorLiterals);
             int num = 0;
             while (problem.isSatisfiable() && (numSolutions < 0 || num < numSolutions)) {
-                int[] model = problem.model();
-                Set<Literal> solution = new HashSet<Literal>();
-                for (int i : model){
-                    if (i > 0){
-                        Literal l = literalsToIndices.indexToValue(i);
-                        if (!auxLiteralsSet.contains(l)) {
-                            solution.add(l);
-                        }
-                    }
-                }
-                retVal.add(solution);
+                retVal.add(this.solution(problem.model()));
                 num++;
             }
             return retVal;
@@ -268,7 +279,7 @@ public class GroundTheorySolver {
         try {
             if (this.optimizer == null) {
                 this.optimizer = new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newDefaultOptimizer());
-                this.optimizer.newVar(this.literalsToIndices.size());
+                this.optimizer.newVar(this.atoms.size());
                 this.optimizer.setExpectedNumberOfClauses(softClauses.size() + hardClauses.size());
                 BigInteger maxWeight = null;
                 for (Pair<Clause,BigInteger> pair : this.softClauses){
@@ -293,16 +304,7 @@ public class GroundTheorySolver {
                 }
             }
             if (this.optimizer.isSatisfiable()) {
-                int[] model;// = solver.model();
-                Set<Literal> solution = new HashSet<Literal>();
-                model = this.optimizer.model();
-
-                for (int i : model) {
-                    if (i > 0) {
-                        solution.add(literalsToIndices.indexToValue(i));
-                    }
-                }
-                return solution;
+                return this.solution(this.optimizer.model());
             }
         } catch (Exception e){
             return null;
@@ -317,9 +319,9 @@ public class GroundTheorySolver {
             int i = 0;
             for (Literal l : c.r.literals()){
                 if (l.isNegated()){
-                    clause[i] = -literalsToIndices.valueToIndex(l.negation());
+                    clause[i] = -this.index(l.negation());
                 } else {
-                    clause[i] = literalsToIndices.valueToIndex(l);
+                    clause[i] = this.index(l);
                 }
                 i++;
             }
@@ -350,7 +352,7 @@ public class GroundTheorySolver {
     private Pair<int[],Integer> toHardDimacsCardinalityConstraint(Literal l){
         int[] constr = new int[l.arity()-1];
         for (int i = 0; i < constr.length; i++){
-            constr[i] = literalsToIndices.valueToIndex(LogicUtils.termToLiteral(l.get(i+1)));
+            constr[i] = this.index(LogicUtils.termToLiteral(l.get(i+1)));
         }
         return new Pair<int[],Integer>(constr, Integer.parseInt(l.get(0).name()));
     }
@@ -358,7 +360,7 @@ public class GroundTheorySolver {
     private int[] toHardDimacsXorConstraint(Literal l){
         int[] xor = new int[l.arity()];
         for (int i = 0; i < xor.length; i++){
-            xor[i] = literalsToIndices.valueToIndex(LogicUtils.termToLiteral(l.get(i)));
+            xor[i] = this.index(LogicUtils.termToLiteral(l.get(i)));
         }
         return xor;
     }
@@ -376,9 +378,9 @@ public class GroundTheorySolver {
         int i = 0;
         for (Literal l : c.literals()){
             if (l.isNegated()){
-                hardDimacsClause[i] = -literalsToIndices.valueToIndex(l.negation());
+                hardDimacsClause[i] = -this.index(l.negation());
             } else {
-                hardDimacsClause[i] = literalsToIndices.valueToIndex(l);
+                hardDimacsClause[i] = this.index(l);
             }
             i++;
         }
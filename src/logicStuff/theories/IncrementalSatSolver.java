@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.theories;
+
+import ida.ilp.logic.Clause;
+import ida.ilp.logic.Literal;
+import ida.ilp.logic.LogicUtils;
+import ida.utils.Sugar;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.GateTranslator;
+
+import java.util.*;
+
+/**
+ * SatSolver which keeps one live sat4j solver across calls. If the clauses passed to solve(...) are a superset
+ * of the clauses passed in the previous call (which is what happens in the cutting-plane loop of TheorySolver),
+ * only the new clauses are added, so the clauses learnt by the solver and its heuristics are preserved.
+ * Otherwise (e.g. after a restart) the solver is rebuilt from scratch.
+ *
+ * Enumeration of solutions (solveAll(...)) is delegated to GroundTheorySolver. Atoms are encoded using a GroundAtomTable
+ * and the returned models are backed by BitSets over its ids. A new table is started whenever the solver is rebuilt,
+ * so ids of atoms from earlier problems are not kept around.
+ */
+public class IncrementalSatSolver implements SatSolver {
+
+    private final static String ATLEAST = "@atleast", ATMOST = "@atmost", XOR = "@xor";
+
+    private GateTranslator solver;
+
+    private GroundAtomTable atoms;
+
+    //ids of the atoms (and auxiliary variables) used by the current solver
+    private BitSet used;
+
+    private Set<Clause> addedClauses;
+
+    private boolean contradiction;
+
+    private int numRebuilds;
+
+    public Set<Literal> solve(Collection<Clause> satProblem) {
+        Set<Clause> problem = new HashSet<Clause>(satProblem);
+        if (this.solver == null || problem.size() < this.addedClauses.size() || !problem.containsAll(this.addedClauses)){
+            this.rebuild(problem.size());
+        }
+        if (!this.contradiction) {
+            try {
+                for (Clause c : problem) {
+                    if (this.addedClauses.add(c)) {
+                        this.addClause(c);
+                    }
+                }
+            } catch (ContradictionException ce) {
+                this.contradiction = true;
+            }
+        }
+        if (this.contradiction){
+            return null;
+        }
+        try {
+            if (this.solver.isSatisfiable()) {
+                BitSet solution = new BitSet(this.atoms.size()+1);
+                for (int i : this.solver.model()) {
+                    if (i > 0 && this.used.get(i) && !this.atoms.isAuxiliary(i)) {
+                        solution.set(i);
+                    }
+                }
+                return this.atoms.atoms(solution);
+            }
+            return null;
+        } catch (TimeoutException e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public List<Set<Literal>> solveAll(Collection<Clause> satProblem, int maxCount) {
+        return new GroundTheorySolver(new HashSet<Clause>(satProblem), null, null).solveAll(maxCount);
+    }
+
+    public List<Set<Literal>> solveAll(Collection<Clause> satProblem, Set<Literal> groundAtoms, int maxCount) {
+        return new GroundTheorySolver(new HashSet<Clause>(satProblem), groundAtoms, null).solveAll(maxCount);
+    }
+
+    private void rebuild(int expectedNumberOfClauses){
+        this.solver = new GateTranslator(SolverFactory.newDefault());
+        this.solver.setKeepSolverHot(true);
+        this.solver.setExpectedNumberOfClauses(expectedNumberOfClauses);
+        this.atoms = new GroundAtomTable();
+        this.used = new BitSet();
+        this.addedClauses = new HashSet<Clause>();
+        this.contradiction = false;
+        this.numRebuilds++;
+    }
+
+    private void addClause(Clause c) throws ContradictionException {
+        if (c.literals().size() == 1){
+            Literal l = Sugar.chooseOne(c.literals());
+            String predicate = l.predicate();
+            if (predicate.equals(ATLEAST) || predicate.equals(ATMOST)){
+                int[] constr = new int[l.arity()-1];
+                for (int i = 0; i < constr.length; i++){
+                    constr[i] = this.index(LogicUtils.termToLiteral(l.get(i+1)));
+                }
+                this.ensureVars();
+                int bound = Integer.parseInt(l.get(0).name());
+                if (predicate.equals(ATLEAST)) {
+                    this.solver.addAtLeast(new VecInt(constr), bound);
+                } else {
+                    this.solver.addAtMost(new VecInt(constr), bound);
+                }
+                return;
+            } else if (predicate.equals(XOR)){
+                int[] xor = new int[l.arity()];
+                for (int i = 0; i < xor.length; i++){
+                    xor[i] = this.index(LogicUtils.termToLiteral(l.get(i)));
+                }
+                Arrays.sort(xor);
+                int aux = this.auxIndex();
+                this.ensureVars();
+                this.solver.xor(aux, new VecInt(xor));
+                this.solver.addClause(new VecInt(new int[]{l.isNegated() ? -aux : aux}));
+                return;
+            }
+        } else {
+            Set<String> predicates = c.predicates();
+            if (predicates.contains(ATLEAST) || predicates.contains(ATMOST) || predicates.contains(XOR)){
+                throw new IllegalArgumentException("The predicates @atmost, @atleast and @xor can only be used on their own. Specifically they cannot be used in clauses containing anything else, at least in this version...");
+            }
+        }
+        int[] clause = this.atoms.clause(c);
+        for (int l : clause){
+            this.used.set(Math.abs(l));
+        }
+        this.ensureVars();
+        this.solver.addClause(new VecInt(clause));
+    }
+
+    private int index(Literal atom){
+        int index = this.atoms.id(atom);
+        this.used.set(index);
+        return index;
+    }
+
+    private int auxIndex(){
+        int index = this.atoms.auxiliary();
+        this.used.set(index);
+        return index;
+    }
+
+    private void ensureVars(){
+        int numVars = this.atoms.size();
+        if (numVars > this.solver.nVars()){
+            this.solver.newVar(numVars);
+        }
+    }
+
+    public int numRebuilds(){
+        return this.numRebuilds;
+    }
+}
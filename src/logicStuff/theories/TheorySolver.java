@@ -16,10 +16,13 @@ import ida.ilp.logic.subsumption.SpecialBinaryPredicates;
 import ida.ilp.logic.subsumption.SpecialVarargPredicates;
 import ida.utils.IntegerFunction;
 import ida.utils.Sugar;
+import ida.utils.collections.MultiMap;
 import ida.utils.tuples.Pair;
 import ida.utils.tuples.Triple;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by kuzelkao_cardiff on 06/02/15.
@@ -34,10 +37,18 @@ public class TheorySolver {
 
     private Set<Pair<String, Integer>> deterministicPredicates = new HashSet<Pair<String, Integer>>();
 
-    private SpecialBinaryPredicates specialBinaryPredicates = new SpecialBinaryPredicates();
+    //violated rules may be filtered by several threads
+    private ThreadLocal<SpecialBinaryPredicates> specialBinaryPredicates = new ThreadLocal<SpecialBinaryPredicates>(){
+        @Override
+        protected SpecialBinaryPredicates initialValue() {
+            return new SpecialBinaryPredicates();
+        }
+    };
 
     public final static int CUTTING_PLANES = 1, GROUND_ALL = 2;
 
+    final static Set<String> SPECIAL_PREDICATES = Collections.unmodifiableSet(Sugar.setFromCollections(SpecialBinaryPredicates.SPECIAL_PREDICATES, SpecialVarargPredicates.SPECIAL_PREDICATES));
+
     private int mode = CUTTING_PLANES;
 
     private int activeRuleSubsample = Integer.MAX_VALUE;
@@ -46,23 +57,13 @@ public class TheorySolver {
 
     private IntegerFunction restartSequence = new IntegerFunction.ConstantFunction(Integer.MAX_VALUE);
 
-    private SatSolver satSolver = new SatSolver() {
+    private boolean semiNaiveViolationSearch = true;
 
-        @Override
-        public Set<Literal> solve(Collection<Clause> satProblem) {
-            return new GroundTheorySolver(Sugar.setFromCollections(satProblem)).solve();
-        }
+    private int parallelism = 1;
 
-        @Override
-        public List<Set<Literal>> solveAll(Collection<Clause> satProblem, int maxCount) {
-            return new GroundTheorySolver(Sugar.setFromCollections(satProblem)).solveAll(maxCount);
-        }
+    private ExecutorService executor;
 
-        @Override
-        public List<Set<Literal>> solveAll(Collection<Clause> satProblem, Set<Literal> groundAtoms, int maxCount) {
-            return new GroundTheorySolver(Sugar.setFromCollections(satProblem), groundAtoms).solveAll(maxCount);
-        }
-    };
+    private SatSolver satSolver = new IncrementalSatSolver();
 
     public Set<Literal> solve(Collection<Clause> rules) {
         return this.solve(rules, Sugar.<Literal>set());
@@ -124,8 +125,12 @@ public class TheorySolver {
 
         Set<Clause> activeRules = new HashSet<Clause>(initRules);
 
+        List<CompiledRule> compiledRules = compile(rules);
+        List<CompiledRule> compiledRulesAndInitRules = compile(Sugar.union(rules, initRules));
+
         int iteration = 1;
         int restart = 0;
+        Set<Literal> previousState = null;
         while (true) {
             if (DEBUG) {
                 System.out.println("Active rules: " + activeRules.size() + ", iteration: " + iteration);
@@ -136,19 +141,14 @@ public class TheorySolver {
             }
             state.addAll(deterministic);
 
-            Set<Clause> violatedRules = Sugar.setFromCollections(findViolatedRules(Sugar.union(rules, initRules), state));
-
-            violatedRules = Sugar.<Clause, Clause>funcallAndRemoveNulls(violatedRules, new Sugar.Fun<Clause, Clause>() {
-                @Override
-                public Clause apply(Clause clause) {
-                    if (isGroundClauseVacuouslyTrue(clause, deterministic)) {
-                        System.out.println("weird: " + clause + ", ~~~" + LogicUtils.flipSigns(clause));
-                        return null;
-                    } else {
-                        return removeSpecialAndDeterministicPredicates(clause);
-                    }
-                }
-            });
+            Set<Clause> violatedRules;
+            if (this.semiNaiveViolationSearch && previousState != null && this.activeRuleSubsample == Integer.MAX_VALUE) {
+                //initRules are ground and all of them are active, so they cannot be violated
+                violatedRules = Sugar.setFromCollections(violatedGroundings(compiledRules, state, previousState, true));
+            } else {
+                violatedRules = Sugar.setFromCollections(violatedGroundings(compiledRulesAndInitRules, state, true));
+            }
+            previousState = state;
 
             activeRules.addAll(violatedRules);
 
@@ -157,7 +157,7 @@ public class TheorySolver {
                 //sanity checkq
                 if (this.activeRuleSubsample != Integer.MAX_VALUE) {
                     this.activeRuleSubsample = Integer.MAX_VALUE;
-                    if (!findViolatedRules(rules, state).isEmpty()) {
+                    if (!violatedGroundings(compiledRules, state, false).isEmpty()) {
                         throw new IllegalStateException();
                     }
                 }
@@ -173,6 +173,8 @@ public class TheorySolver {
 //                }
                 iteration = 0;
                 restart++;
+                //groundings violated by the last state need not be active anymore
+                previousState = null;
             }
         }
         return state;
@@ -253,6 +255,7 @@ public class TheorySolver {
             });
             return satSolver.solveAll(activeRules, groundAtoms, maxReturnedCount);
         } else {
+            List<CompiledRule> compiledRulesAndInitRules = compile(Sugar.union(rules, initRules));
             int mc = 1;
             Set<Set<Literal>> retVal = new HashSet<Set<Literal>>();
             do {
@@ -266,18 +269,7 @@ public class TheorySolver {
                     }
                     int numViolatedRules = 0;
                     for (Set<Literal> solution : candidateSolutions) {
-                        Set<Clause> violatedRules = Sugar.setFromCollections(findViolatedRules(Sugar.union(rules, initRules), Sugar.union(solution, deterministic)));
-                        violatedRules = Sugar.<Clause, Clause>funcallAndRemoveNulls(violatedRules, new Sugar.Fun<Clause, Clause>() {
-                            @Override
-                            public Clause apply(Clause clause) {
-                                if (isGroundClauseVacuouslyTrue(clause, deterministic)) {
-                                    System.out.println("weird: " + clause + ", ~~~" + LogicUtils.flipSigns(clause));
-                                    return null;
-                                } else {
-                                    return removeSpecialAndDeterministicPredicates(clause);
-                                }
-                            }
-                        });
+                        Set<Clause> violatedRules = Sugar.setFromCollections(violatedGroundings(compiledRulesAndInitRules, Sugar.union(solution, deterministic), true));
                         if (violatedRules.isEmpty()) {
                             retVal.add(solution);
                         } else {
@@ -306,8 +298,223 @@ public class TheorySolver {
     }
 
     public List<Clause> findViolatedRules(Collection<Clause> rules, Set<Literal> currentState){
+        return violatedGroundings(compile(rules), currentState, false);
+    }
+
+    /**
+     * Semi-naive version of findViolatedRules(rules, currentState): it assumes that all groundings of the rules
+     * violated by previousState have already been added to the active rules (and are therefore satisfied by currentState),
+     * so it only searches for groundings which contain at least one atom whose truth value differs in the two states.
+     *
+     * @param rules the rules
+     * @param currentState the current state (set of true ground atoms)
+     * @param previousState the state from the previous iteration
+     * @return groundings of the rules violated by currentState but not by previousState
+     */
+    public List<Clause> findViolatedRules(Collection<Clause> rules, Set<Literal> currentState, Set<Literal> previousState){
+        return violatedGroundings(compile(rules), currentState, previousState, false);
+    }
+
+    private List<CompiledRule> compile(Collection<Clause> rules){
+        List<CompiledRule> retVal = new ArrayList<CompiledRule>(rules.size());
+        for (Clause rule : rules){
+            retVal.add(new CompiledRule(rule, this.deterministicPredicates));
+        }
+        return retVal;
+    }
+
+    //if filter is true, vacuously true groundings are dropped and special and deterministic literals are removed from the other ones
+    private List<Clause> violatedGroundings(List<CompiledRule> rules, Set<Literal> currentState, boolean filter){
+        return violatedGroundings(rules, stateClause(rules, currentState), null, filter);
+    }
+
+    private List<Clause> violatedGroundings(List<CompiledRule> rules, Set<Literal> currentState, Set<Literal> previousState, boolean filter){
+        //states coming from IncrementalSatSolver are backed by BitSets over its current table, other sets get encoded in a new one
+        GroundAtomTable table = GroundAtomTable.tableOf(currentState);
+        if (table == null){
+            table = new GroundAtomTable();
+        }
+        BitSet current = table.bits(currentState);
+        BitSet changed = (BitSet)current.clone();
+        changed.xor(table.bits(previousState));
+        if (changed.isEmpty()){
+            return new ArrayList<Clause>();
+        }
+        StateDelta delta = new StateDelta();
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i+1)){
+            Literal l = table.atom(i);
+            (current.get(i) ? delta.added : delta.removed).put(new Pair<String,Integer>(l.predicate(), l.arity()), l);
+        }
+        //terms which can be used in substitutions by the full search
+        for (CompiledRule rule : rules){
+            delta.domain.addAll(rule.constants());
+        }
+        for (Literal l : currentState){
+            for (int i = 0; i < l.arity(); i++){
+                delta.domain.add(l.get(i));
+            }
+        }
+        //the same grounding may be found from several changed atoms
+        return Sugar.listFromCollections(new LinkedHashSet<Clause>(violatedGroundings(rules, stateClause(rules, currentState), delta, filter)));
+    }
+
+    //the violations are returned in the order of the rules (no matter how many threads are used)
+    private List<Clause> violatedGroundings(final List<CompiledRule> rules, final Clause stateClause, final StateDelta delta, final boolean filter){
+        final List<List<Clause>> violatedByRule = new ArrayList<List<Clause>>(rules.size());
+        for (int i = 0; i < rules.size(); i++){
+            violatedByRule.add(new ArrayList<Clause>());
+        }
+        int numThreads = Math.min(this.parallelism, rules.size());
+        if (numThreads <= 1){
+            Matching matching = newM(stateClause);
+            for (int i = 0; i < rules.size(); i++){
+                violations(rules.get(i), matching, delta, filter, violatedByRule.get(i));
+            }
+        } else {
+            //every worker builds its own Matching over the same state and then takes rules one by one
+            final AtomicInteger nextRule = new AtomicInteger(0);
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (int t = 0; t < numThreads; t++){
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        Matching matching = newM(stateClause);
+                        int i;
+                        while ((i = nextRule.getAndIncrement()) < rules.size()){
+                            violations(rules.get(i), matching, delta, filter, violatedByRule.get(i));
+                        }
+                        return null;
+                    }
+                });
+            }
+            try {
+                for (Future<Object> future : this.executor().invokeAll(tasks)){
+                    future.get();
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e){
+                throw new RuntimeException(e.getCause());
+            }
+        }
         List<Clause> violated = new ArrayList<Clause>();
-        Set<Constant> constants = LogicUtils.constants(rules);
+        for (List<Clause> list : violatedByRule){
+            violated.addAll(list);
+        }
+        return violated;
+    }
+
+    private void violations(CompiledRule rule, Matching matching, StateDelta delta, boolean filter, List<Clause> violated){
+        if (delta != null){
+            for (int i = 0; i < rule.size(); i++){
+                Literal l = rule.literal(i);
+                //negative literals are violated by atoms which became true, positive literals by atoms which became false
+                MultiMap<Pair<String,Integer>,Literal> changed = l.isNegated() ? delta.added : delta.removed;
+                if (!changed.containsKey(rule.key(i))){
+                    continue;
+                }
+                for (Literal atom : changed.get(rule.key(i))){
+                    Map<Term,Term> substitution = unify(l, atom, delta.domain, this.subsumptionMode == Matching.OI_SUBSUMPTION ? rule.constants() : null);
+                    if (substitution != null){
+                        Pair<Term[], List<Term[]>> substitutions = matching.allSubstitutions(LogicUtils.substitute(rule.query(), substitution), 0, Integer.MAX_VALUE);
+                        addGroundings(rule, rule.grounding(substitutions.r, substitution), substitutions.s, filter, violated);
+                    }
+                }
+            }
+        } else if (this.activeRuleSubsample == Integer.MAX_VALUE) {
+            Pair<Term[], List<Term[]>> substitutions = matching.allSubstitutions(rule.query(), 0, Integer.MAX_VALUE);
+            addGroundings(rule, rule.grounding(substitutions.r, null), substitutions.s, filter, violated);
+        } else {
+            Pair<Term[], List<Term[]>> substitutions0 = matching.allSubstitutions(rule.query(), 0, this.activeRuleSubsample);
+            if (substitutions0.s.size() < this.activeRuleSubsample){
+                addGroundings(rule, rule.grounding(substitutions0.r, null), substitutions0.s, filter, violated);
+            } else {
+                Triple<Term[], List<Term[]>, Double> substitutions = matching.searchTreeSampler(rule.query(), 0, this.activeRuleSubsample, this.activeRuleSubsamplingLevelStep);
+                addGroundings(rule, rule.grounding(substitutions.r, null), substitutions.s, filter, violated);
+            }
+        }
+    }
+
+    private void addGroundings(CompiledRule rule, CompiledRule.Grounding grounding, List<Term[]> substitutions, boolean filter, List<Clause> violated){
+        for (Term[] subs : substitutions){
+            if (!filter){
+                violated.add(grounding.ground(subs));
+            } else {
+                Clause filtered = groundAndFilter(rule, grounding, subs);
+                if (filtered != null){
+                    violated.add(filtered);
+                } else {
+                    Clause clause = grounding.ground(subs);
+                    System.out.println("weird: " + clause + ", ~~~" + LogicUtils.flipSigns(clause));
+                }
+            }
+        }
+    }
+
+    //the same as removeSpecialAndDeterministicPredicates(substitute(rule)) or null if isGroundClauseVacuouslyTrue(substitute(rule))
+    private Clause groundAndFilter(CompiledRule rule, CompiledRule.Grounding grounding, Term[] values){
+        List<Literal> filtered = new ArrayList<Literal>(rule.numOrdinaryLiterals());
+        boolean specialSeen = false;
+        for (int i = 0; i < rule.size(); i++){
+            switch (rule.kind(i)){
+                case CompiledRule.SPECIAL:
+                    //as in isGroundClauseVacuouslyTrue, the first special literal decides
+                    if (!specialSeen){
+                        specialSeen = true;
+                        if (isSpecialGroundTrue(grounding.literal(i, values, false))){
+                            return null;
+                        }
+                    }
+                    break;
+                case CompiledRule.DETERMINISTIC:
+                    if (!specialSeen && rule.literal(i).isNegated() != this.deterministicLiterals.contains(grounding.literal(i, values, true))){
+                        return null;
+                    }
+                    break;
+                default:
+                    filtered.add(grounding.literal(i, values, false));
+            }
+        }
+        return new Clause(filtered);
+    }
+
+    //if ruleConstants is not null, the substitution must be injective and must not map variables to the constants of the rule (object identity)
+    private static Map<Term,Term> unify(Literal literal, Literal groundAtom, Set<Term> domain, Set<Constant> ruleConstants){
+        Map<Term,Term> substitution = new HashMap<Term,Term>();
+        for (int i = 0; i < literal.arity(); i++){
+            Term t = literal.get(i);
+            Term g = groundAtom.get(i);
+            if (t instanceof Variable){
+                Term old = substitution.put(t, g);
+                if (old != null){
+                    if (!old.equals(g)){
+                        return null;
+                    }
+                } else if (!domain.contains(g) || (ruleConstants != null && (ruleConstants.contains(g) || isBoundToOther(substitution, t, g)))){
+                    return null;
+                }
+            } else if (!t.equals(g)){
+                return null;
+            }
+        }
+        return substitution;
+    }
+
+    private static boolean isBoundToOther(Map<Term,Term> substitution, Term variable, Term value){
+        for (Map.Entry<Term,Term> entry : substitution.entrySet()){
+            if (!entry.getKey().equals(variable) && entry.getValue().equals(value)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Clause stateClause(List<CompiledRule> rules, Set<Literal> currentState){
+        Set<Constant> constants = new HashSet<Constant>();
+        for (CompiledRule rule : rules){
+            constants.addAll(rule.constants());
+        }
         for (Literal l : currentState){
             for (int i = 0; i < l.arity(); i++){
                 if (constants.contains(l.get(i))){
@@ -323,28 +530,26 @@ public class TheorySolver {
             constantIntroductionLiteral.set(c, constantIndex++);
         }
 
-        Matching matching = newM(new Clause(Sugar.union(currentState, constantIntroductionLiteral)));
-        for (Clause rule : rules){
-            if (this.activeRuleSubsample == Integer.MAX_VALUE) {
-                Pair<Term[], List<Term[]>> substitutions = matching.allSubstitutions(LogicUtils.flipSigns(rule), 0, Integer.MAX_VALUE);
-                for (Term[] subs : substitutions.s) {
-                    violated.add(LogicUtils.substitute(rule, substitutions.r, subs));
-                }
-            } else {
-                Pair<Term[], List<Term[]>> substitutions0 = matching.allSubstitutions(LogicUtils.flipSigns(rule), 0, this.activeRuleSubsample);
-                if (substitutions0.s.size() < this.activeRuleSubsample){
-                    for (Term[] subs : substitutions0.s) {
-                        violated.add(LogicUtils.substitute(rule, substitutions0.r, subs));
-                    }
-                } else {
-                    Triple<Term[], List<Term[]>, Double> substitutions = matching.searchTreeSampler(LogicUtils.flipSigns(rule), 0, this.activeRuleSubsample, this.activeRuleSubsamplingLevelStep);
-                    for (Term[] subs : substitutions.s) {
-                        violated.add(LogicUtils.substitute(rule, substitutions.r, subs));
+        return new Clause(Sugar.union(currentState, constantIntroductionLiteral));
+    }
+
+    private ExecutorService executor(){
+        synchronized (this){
+            if (this.executor == null){
+                //idle threads time out, so a solver which is never closed does not keep them alive
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(this.parallelism, this.parallelism, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r);
+                        thread.setDaemon(true);
+                        return thread;
                     }
-                }
+                });
+                executor.allowCoreThreadTimeOut(true);
+                this.executor = executor;
             }
+            return this.executor;
         }
-        return violated;
     }
 
     public List<Clause> groundAll(Collection<Clause> rules, Set<Literal> evidence, Set<Literal> groundAtoms){
@@ -358,11 +563,11 @@ public class TheorySolver {
             matching = newM(new Clause(Sugar.union(evidence, groundAtoms)));
         }
         matching.setSubsumptionMode(this.subsumptionMode);
-        for (Clause rule : rules){
-            Clause stub = ruleStub(rule);
-            Pair<Term[], List<Term[]>> substitutions = matching.allSubstitutions(LogicUtils.flipSigns(stub), 0, Integer.MAX_VALUE);
+        for (CompiledRule rule : compile(rules)){
+            Pair<Term[], List<Term[]>> substitutions = matching.allSubstitutions(rule.stubQuery(), 0, Integer.MAX_VALUE);
+            CompiledRule.Grounding grounding = rule.grounding(substitutions.r, null);
             for (Term[] subs : substitutions.s) {
-                groundRules.add(LogicUtils.substitute(rule, substitutions.r, subs));
+                groundRules.add(grounding.ground(subs));
                 //System.out.println(rule+" --> "+LogicUtils.substitute(rule, substitutions.r, subs));
             }
         }
@@ -370,32 +575,14 @@ public class TheorySolver {
         return groundRules;
     }
 
-    private Clause ruleStub(Clause rule){
-        Set<String> specialPredicates = Sugar.setFromCollections(SpecialBinaryPredicates.SPECIAL_PREDICATES, SpecialVarargPredicates.SPECIAL_PREDICATES);
-        Set<Literal> newLiterals = new HashSet<Literal>();
-        Pair<String,Integer> pair = new Pair<String,Integer>();
-        for (Literal l : rule.literals()){
-            pair.set(l.predicate(),l.arity());
-            if (specialPredicates.contains(l.predicate()) || deterministicPredicates.contains(pair)){
-                newLiterals.add(l);
-            }
-        }
-        Set<Variable> variables = rule.variables();
-        Literal variablesIntroduction = new Literal(SpecialVarargPredicates.TRUE, true, variables.size());
-        int i = 0;
-        for (Variable var : variables){
-            variablesIntroduction.set(var, i++);
-        }
-        newLiterals.add(variablesIntroduction);
-        return new Clause(newLiterals);
-    }
-
     private boolean isGroundClauseVacuouslyTrue(Clause c, Set<Literal> deterministic){
+        Pair<String,Integer> p = new Pair<String,Integer>();
         for (Literal l : c.literals()){
-            if (SpecialVarargPredicates.SPECIAL_PREDICATES.contains(l.predicate()) || SpecialBinaryPredicates.SPECIAL_PREDICATES.contains(l.predicate())){
+            p.set(l.predicate(), l.arity());
+            if (SPECIAL_PREDICATES.contains(l.predicate())){
                 Boolean b = isSpecialGroundTrue(l);
                 return b != null && b.booleanValue();
-            } else if (this.deterministicPredicates.contains(new Pair<String,Integer>(l.predicate(), l.arity()))){
+            } else if (this.deterministicPredicates.contains(p)){
                 if ((!l.isNegated() && deterministic.contains(l)) || (l.isNegated() && !deterministic.contains(l.negation()))){
                     return true;
                 }
@@ -406,10 +593,10 @@ public class TheorySolver {
 
     private Clause removeSpecialAndDeterministicPredicates(Clause clause){
         List<Literal> filtered = new ArrayList<Literal>();
-        Set<String> specialPredicates = Sugar.setFromCollections(SpecialBinaryPredicates.SPECIAL_PREDICATES, SpecialVarargPredicates.SPECIAL_PREDICATES);
+        Pair<String,Integer> p = new Pair<String,Integer>();
         for (Literal literal : clause.literals()){
-            if (!specialPredicates.contains(literal.predicate()) &&
-                    !deterministicPredicates.contains(new Pair<String,Integer>(literal.predicate(), literal.arity()))){
+            p.set(literal.predicate(), literal.arity());
+            if (!SPECIAL_PREDICATES.contains(literal.predicate()) && !deterministicPredicates.contains(p)){
                 filtered.add(literal);
             }
         }
@@ -418,7 +605,7 @@ public class TheorySolver {
 
     private boolean isSpecialGroundTrue(Literal l){
         if (SpecialBinaryPredicates.SPECIAL_PREDICATES.contains(l.predicate())){
-            return specialBinaryPredicates.isTrueGround(l);
+            return specialBinaryPredicates.get().isTrueGround(l);
         } else if (SpecialVarargPredicates.SPECIAL_PREDICATES.contains(l.predicate())){
             return SpecialVarargPredicates.isTrueGround(l);
         }
@@ -445,6 +632,39 @@ public class TheorySolver {
         this.activeRuleSubsamplingLevelStep = levelStep;
     }
 
+    /**
+     * If set to true (default), the cutting-plane loop of solve(...) only searches for violated groundings which involve atoms
+     * changed since the previous iteration. It falls back to the full search when active rule subsampling is used and after restarts.
+     * @param semiNaiveViolationSearch
+     */
+    public void setSemiNaiveViolationSearch(boolean semiNaiveViolationSearch){
+        this.semiNaiveViolationSearch = semiNaiveViolationSearch;
+    }
+
+    /**
+     * Sets the number of threads used for searching for violated rules (each of them uses its own Matching over the current state).
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism){
+        synchronized (this){
+            this.close();
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Shuts down the threads used for searching for violated rules (see setParallelism(...)). The solver can still be used
+     * afterwards, new threads are created when they are needed.
+     */
+    public void close(){
+        synchronized (this){
+            if (this.executor != null){
+                this.executor.shutdown();
+                this.executor = null;
+            }
+        }
+    }
+
     public void setMode(int mode){
         this.mode = mode;
     }
@@ -458,6 +678,16 @@ public class TheorySolver {
     }
 
 
+    private static class StateDelta {
+
+        //atoms which became true and atoms which became false, indexed by predicate and arity
+        MultiMap<Pair<String,Integer>,Literal> added = new MultiMap<Pair<String, Integer>, Literal>();
+
+        MultiMap<Pair<String,Integer>,Literal> removed = new MultiMap<Pair<String, Integer>, Literal>();
+
+        Set<Term> domain = new HashSet<Term>();
+    }
+
     public static void main(String[] args){
         Clause a = Clause.parse("bond(id1,id2)");
         Clause c = Clause.parse("e(id1,id2)");
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that datasets obtained by subDataset, splitOnAttribute, randomSplit, shuffle, neighbourhood and select
+ * (which share the columns of their parent) behave the same as datasets built from copies of the same rows.
+ */
+public class BinaryDatasetTest {
+
+    @Test
+    public void viewsMatchCopies() throws Exception {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 150; trial++){
+            checkRandomOperations(1+random.nextInt(300), 1+random.nextInt(6), random);
+        }
+    }
+
+    @Test
+    public void sparseViewsMatchCopies() throws Exception {
+        //views with few rows of a large dataset are evaluated without the bitset over all rows
+        Random random = new Random(2);
+        for (int trial = 0; trial < 5; trial++){
+            checkRandomOperations(20000, 1+random.nextInt(6), 0.01, random);
+        }
+    }
+
+    private static void checkRandomOperations(int numRows, int numAttributes, Random random) throws Exception {
+        checkRandomOperations(numRows, numAttributes, 1.0, random);
+    }
+
+    private static void checkRandomOperations(int numRows, int numAttributes, double initialFraction, Random random) throws Exception {
+        boolean[][] data = new boolean[numRows][numAttributes];
+        double[] weights = new double[numRows];
+        for (int i = 0; i < numRows; i++){
+            weights[i] = random.nextInt(5)+1;
+            for (int j = 0; j < numAttributes; j++){
+                data[i][j] = random.nextBoolean();
+            }
+        }
+        String[] names = new String[numAttributes];
+        for (int j = 0; j < numAttributes; j++){
+            names[j] = "a"+j;
+        }
+        BinaryDataset view = new BinaryDataset(data, names, weights);
+        BinaryDataset reference = new BinaryDataset(data, names, weights.clone());
+        if (initialFraction < 1){
+            long seed = random.nextLong();
+            view = view.randomSplit(initialFraction, new Random(seed)).r;
+            reference = reference.randomSplit(initialFraction, new Random(seed)).r;
+            assertSameDataset(view, materialize(reference), names, random);
+        }
+        for (int step = 0; step < 4 && view.numExamples() > 0; step++){
+            long seed = random.nextLong();
+            switch (random.nextInt(6)){
+                case 0: {
+                    int from = random.nextInt(view.numExamples());
+                    int to = from+random.nextInt(view.numExamples()-from+1);
+                    view = view.subDataset(from, to);
+                    reference = materialize(reference).subDataset(from, to);
+                    break;
+                }
+                case 1: {
+                    String attribute = names[random.nextInt(numAttributes)];
+                    boolean positive = random.nextBoolean();
+                    view = positive ? view.splitOnAttribute(attribute).r : view.splitOnAttribute(attribute).s;
+                    reference = materialize(reference);
+                    reference = positive ? reference.splitOnAttribute(attribute).r : reference.splitOnAttribute(attribute).s;
+                    break;
+                }
+                case 2: {
+                    view = view.randomSplit(0.6, new Random(seed)).r;
+                    reference = materialize(reference).randomSplit(0.6, new Random(seed)).r;
+                    break;
+                }
+                case 3: {
+                    view.shuffle(new Random(seed));
+                    reference = materialize(reference);
+                    reference.shuffle(new Random(seed));
+                    break;
+                }
+                case 4: {
+                    boolean[] center = data[random.nextInt(numRows)];
+                    view = view.neighbourhood(center, numAttributes/2);
+                    reference = materialize(reference).neighbourhood(center, numAttributes/2);
+                    break;
+                }
+                case 5: {
+                    String[] attributes = {names[random.nextInt(numAttributes)]};
+                    boolean[] positive = {random.nextBoolean()};
+                    view = view.select(attributes, positive, BinaryDataset.FormulaType.CONJUNCTION);
+                    reference = materialize(reference).select(attributes, positive, BinaryDataset.FormulaType.CONJUNCTION);
+                    break;
+                }
+            }
+            assertSameDataset(view, materialize(reference), names, random);
+        }
+    }
+
+    private static void assertSameDataset(BinaryDataset a, BinaryDataset b, String[] names, Random random) throws Exception {
+        assertEquals(b.numExamples(), a.numExamples());
+        for (int i = 0; i < a.numExamples(); i++){
+            assertTrue(Arrays.equals(b.example(i), a.example(i)));
+            assertEquals(b.weight(i), a.weight(i), 0);
+        }
+        assertEquals(b.sumOfWeights(), a.sumOfWeights(), 1e-9);
+        for (int q = 0; q < 5; q++){
+            int length = random.nextInt(4);
+            String[] attributes = new String[length];
+            boolean[] positive = new boolean[length];
+            for (int i = 0; i < length; i++){
+                attributes[i] = names[random.nextInt(names.length)];
+                positive[i] = random.nextBoolean();
+            }
+            assertEquals(b.count(attributes, positive), a.count(attributes, positive), 0);
+            assertEquals(b.sum(attributes, positive), a.sum(attributes, positive), 1e-9);
+            assertEquals(b.select(attributes, positive, BinaryDataset.FormulaType.DISJUNCTION).numExamples(),
+                    a.select(attributes, positive, BinaryDataset.FormulaType.DISJUNCTION).numExamples());
+        }
+        assertEquals(new HashSet<Object>(new ConstraintLearner().learnConstraints(b, 3)), new HashSet<Object>(new ConstraintLearner().learnConstraints(a, 3)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        a.writeBinary(out);
+        File file = File.createTempFile("binary-dataset-test", ".bin");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(out.toByteArray());
+        fos.close();
+        BinaryDataset read = BinaryDataset.openBinary(file);
+        assertEquals(a.numExamples(), read.numExamples());
+        for (int i = 0; i < a.numExamples(); i++){
+            assertTrue(Arrays.equals(a.example(i), read.example(i)));
+            assertEquals(a.weight(i), read.weight(i), 0);
+        }
+    }
+
+    private static BinaryDataset materialize(BinaryDataset dataset){
+        return new BinaryDataset(dataset.examples(), dataset.attributes(), dataset.weights().clone());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.learning;
+
+import ida.ilp.logic.Clause;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the VERTICAL mode of ConstraintLearner learns the same constraints as the BEAM mode.
+ */
+public class ConstraintLearnerTest {
+
+    @Test
+    public void verticalMatchesBeam(){
+        Random random = new Random(3);
+        for (int trial = 0; trial < 100; trial++){
+            BinaryDataset dataset = randomDataset(1+random.nextInt(200), 1+random.nextInt(7), random);
+            assertSameConstraints(dataset, random.nextInt(5));
+        }
+    }
+
+    @Test
+    public void verticalMatchesBeamOnLargeDatasets(){
+        //large enough for the vertical search to split its search tree between several tasks
+        Random random = new Random(4);
+        for (int trial = 0; trial < 3; trial++){
+            assertSameConstraints(randomDataset(10000, 6, random), 3);
+        }
+    }
+
+    @Test
+    public void verticalMatchesBeamOnViews(){
+        Random random = new Random(5);
+        for (int trial = 0; trial < 20; trial++){
+            BinaryDataset dataset = randomDataset(500, 1+random.nextInt(6), random);
+            assertSameConstraints(dataset.randomSplit(0.3, random).r, 3);
+            assertSameConstraints(dataset.splitOnAttribute(dataset.attributes()[0]).r, 3);
+        }
+    }
+
+    private static void assertSameConstraints(BinaryDataset dataset, int maxLength){
+        Set<Clause> beam = new ConstraintLearner(ConstraintLearner.BEAM).learnConstraints(dataset, maxLength);
+        Set<Clause> vertical = new ConstraintLearner(ConstraintLearner.VERTICAL).learnConstraints(dataset, maxLength);
+        assertEquals(beam, vertical);
+        //without limits, the budgeted search finds the same constraints
+        assertEquals(beam, new HashSet<Clause>(new ConstraintLearner(ConstraintLearner.VERTICAL).learnConstraints(dataset, maxLength, new LearningBudget()).constraints()));
+    }
+
+    //attributes are biased and two constraints are planted, so that short conjunctions with zero support exist
+    private static BinaryDataset randomDataset(int numRows, int numAttributes, Random random){
+        double[] bias = new double[numAttributes];
+        for (int j = 0; j < numAttributes; j++){
+            bias[j] = random.nextDouble();
+        }
+        boolean[][] data = new boolean[numRows][numAttributes];
+        for (int i = 0; i < numRows; i++){
+            for (int j = 0; j < numAttributes; j++){
+                data[i][j] = random.nextDouble() < bias[j];
+            }
+            if (numAttributes >= 2 && data[i][0]){
+                data[i][1] = false;
+            }
+            if (numAttributes >= 5 && data[i][2] && data[i][3]){
+                data[i][4] = true;
+            }
+        }
+        String[] names = new String[numAttributes];
+        for (int j = 0; j < numAttributes; j++){
+            names[j] = "a"+j;
+        }
+        return new BinaryDataset(data, names);
+    }
+}
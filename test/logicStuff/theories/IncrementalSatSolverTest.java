@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.theories;
+
+import ida.ilp.logic.Clause;
+import ida.ilp.logic.Literal;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that IncrementalSatSolver, which reuses one solver across calls, agrees with a fresh GroundTheorySolver.
+ */
+public class IncrementalSatSolverTest {
+
+    @Test
+    public void incrementalMatchesFreshSolver(){
+        Random random = new Random(1);
+        IncrementalSatSolver incremental = new IncrementalSatSolver();
+        for (int trial = 0; trial < 30; trial++){
+            List<Clause> problem = new ArrayList<Clause>();
+            while (true){
+                //mostly the problem grows like in the cutting-plane loop, sometimes clauses are dropped and the solver is rebuilt
+                if (!problem.isEmpty() && random.nextInt(5) == 0){
+                    problem.remove(random.nextInt(problem.size()));
+                }
+                for (int i = 0; i < 3; i++){
+                    problem.add(randomClause(8, random));
+                }
+                Set<Literal> model = incremental.solve(problem);
+                Set<Literal> freshModel = new GroundTheorySolver(new HashSet<Clause>(problem)).solve();
+                assertEquals(freshModel == null, model == null);
+                if (model == null){
+                    break;
+                }
+                for (Clause c : problem){
+                    assertTrue("violated " + c, isSatisfied(c, model));
+                }
+            }
+        }
+        assertTrue(incremental.numRebuilds() >= 30);
+    }
+
+    @Test
+    public void solveAllMatchesFreshSolver(){
+        Random random = new Random(2);
+        IncrementalSatSolver incremental = new IncrementalSatSolver();
+        for (int trial = 0; trial < 20; trial++){
+            List<Clause> problem = new ArrayList<Clause>();
+            for (int i = 0; i < 10; i++){
+                problem.add(randomClause(6, random));
+            }
+            //solve first, so that the table of the incremental solver is not empty
+            incremental.solve(problem);
+            assertEquals(models(new GroundTheorySolver(new HashSet<Clause>(problem)).solveAll(Integer.MAX_VALUE)),
+                    models(incremental.solveAll(problem, Integer.MAX_VALUE)));
+        }
+    }
+
+    private static Clause randomClause(int numAtoms, Random random){
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3; i++){
+            if (i > 0){
+                sb.append(", ");
+            }
+            sb.append(random.nextBoolean() ? "!" : "").append("p(c").append(random.nextInt(numAtoms)).append(")");
+        }
+        return Clause.parse(sb.toString());
+    }
+
+    private static boolean isSatisfied(Clause clause, Set<Literal> model){
+        for (Literal l : clause.literals()){
+            if (l.isNegated() ? !model.contains(l.negation()) : model.contains(l)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Set<Literal>> models(List<Set<Literal>> solutions){
+        Set<Set<Literal>> retVal = new HashSet<Set<Literal>>();
+        for (Set<Literal> solution : solutions){
+            retVal.add(new HashSet<Literal>(solution));
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015 Ondrej Kuzelka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package logicStuff.theories;
+
+import ida.ilp.logic.Clause;
+import ida.ilp.logic.Literal;
+import ida.ilp.logic.subsumption.Matching;
+import ida.utils.Sugar;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the semi-naive search for violated rules agrees with the full search.
+ */
+public class TheorySolverTest {
+
+    private final static List<Clause> RULES = Sugar.list(
+            Clause.parse("!a(X,Y), b(X)"),
+            Clause.parse("!a(X,Y), !a(Y,X)"),
+            Clause.parse("a(X,X), !b(X)"),
+            Clause.parse("!b(X), !b(Y), a(X,Y)"),
+            Clause.parse("!a(c1,X), b(X)")
+    );
+
+    @Test
+    public void semiNaiveMatchesFullSearchUnderThetaSubsumption(){
+        semiNaiveMatchesFullSearch(Matching.THETA_SUBSUMPTION);
+    }
+
+    @Test
+    public void semiNaiveMatchesFullSearchUnderObjectIdentity(){
+        semiNaiveMatchesFullSearch(Matching.OI_SUBSUMPTION);
+    }
+
+    @Test
+    public void semiNaiveRespectsObjectIdentity(){
+        List<Clause> rules = Sugar.list(Clause.parse("!a(X,Y)"));
+        Set<Literal> previous = new HashSet<Literal>();
+        Set<Literal> current = Sugar.set(Literal.parseLiteral("a(c,c)"));
+
+        TheorySolver theta = new TheorySolver();
+        theta.setSubsumptionMode(Matching.THETA_SUBSUMPTION);
+        assertEquals(1, theta.findViolatedRules(rules, current).size());
+        assertEquals(1, theta.findViolatedRules(rules, current, previous).size());
+
+        TheorySolver oi = new TheorySolver();
+        oi.setSubsumptionMode(Matching.OI_SUBSUMPTION);
+        assertTrue(oi.findViolatedRules(rules, current).isEmpty());
+        assertTrue(oi.findViolatedRules(rules, current, previous).isEmpty());
+    }
+
+    private static void semiNaiveMatchesFullSearch(int subsumptionMode){
+        Random random = new Random(subsumptionMode);
+        List<Literal> atoms = new ArrayList<Literal>();
+        for (int i = 1; i <= 4; i++){
+            atoms.add(Literal.parseLiteral("b(c"+i+")"));
+            for (int j = 1; j <= 4; j++){
+                atoms.add(Literal.parseLiteral("a(c"+i+",c"+j+")"));
+            }
+        }
+        TheorySolver solver = new TheorySolver();
+        solver.setSubsumptionMode(subsumptionMode);
+        for (int trial = 0; trial < 50; trial++){
+            Set<Literal> previous = randomState(atoms, random);
+            Set<Literal> current = randomState(atoms, random);
+            Set<Clause> violatedByPrevious = new HashSet<Clause>(solver.findViolatedRules(RULES, previous));
+            Set<Clause> violatedByCurrent = new HashSet<Clause>(solver.findViolatedRules(RULES, current));
+            Set<Clause> semiNaive = new HashSet<Clause>(solver.findViolatedRules(RULES, current, previous));
+            //every grounding which is newly violated must be found and nothing which is not violated may be returned
+            for (Clause c : violatedByCurrent){
+                if (!violatedByPrevious.contains(c)){
+                    assertTrue("missing " + c, semiNaive.contains(c));
+                }
+            }
+            for (Clause c : semiNaive){
+                assertTrue("not violated " + c, violatedByCurrent.contains(c));
+            }
+        }
+    }
+
+    private static Set<Literal> randomState(List<Literal> atoms, Random random){
+        Set<Literal> state = new HashSet<Literal>();
+        for (Literal atom : atoms){
+            if (random.nextBoolean()){
+                state.add(atom);
+            }
+        }
+        return state;
+    }
+}